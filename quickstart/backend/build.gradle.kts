@@ -16,6 +16,8 @@ dependencies {
     implementation(Deps.springBoot.jdbc)
     implementation("org.springdoc:springdoc-openapi-starter-webmvc-ui:2.6.0")
     implementation("org.openapitools:jackson-databind-nullable:0.2.6")
+    implementation("com.fasterxml.jackson.dataformat:jackson-dataformat-smile:2.18.2")
+    implementation("com.fasterxml.jackson.dataformat:jackson-dataformat-cbor:2.18.2")
 
     implementation(Deps.transcode.codegenJavaRuntime)
     implementation(Deps.transcode.protoJava)
@@ -45,6 +47,11 @@ dependencies {
     runtimeOnly(Deps.grpc.netty)
 
     testImplementation(Deps.springBoot.test)
+    testRuntimeOnly("org.junit.platform:junit-platform-launcher")
+}
+
+tasks.test {
+    useJUnitPlatform()
 }
 
 repositories {
@@ -14,6 +14,8 @@ public class PostgresConfig {
     private String database = "postgres";
     private String username = "postgres";
     private String password = "postgres";
+    private int maxPoolSize = 16;
+    private long connectionTimeoutMs = 30_000;
 
     // Getters and Setters
     public String getHost() {
@@ -55,5 +57,20 @@ public class PostgresConfig {
     public void setPassword(String password) {
         this.password = password;
     }
-}
 
+    public int getMaxPoolSize() {
+        return maxPoolSize;
+    }
+
+    public void setMaxPoolSize(int maxPoolSize) {
+        this.maxPoolSize = maxPoolSize;
+    }
+
+    public long getConnectionTimeoutMs() {
+        return connectionTimeoutMs;
+    }
+
+    public void setConnectionTimeoutMs(long connectionTimeoutMs) {
+        this.connectionTimeoutMs = connectionTimeoutMs;
+    }
+}
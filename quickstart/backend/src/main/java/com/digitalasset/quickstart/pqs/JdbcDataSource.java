@@ -4,13 +4,13 @@
 package com.digitalasset.quickstart.pqs;
 
 import com.digitalasset.quickstart.config.PostgresConfig;
+import com.zaxxer.hikari.HikariDataSource;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.jdbc.core.JdbcTemplate;
-import org.springframework.jdbc.datasource.DriverManagerDataSource;
 
 import javax.sql.DataSource;
 
@@ -26,19 +26,24 @@ public class JdbcDataSource {
     private PostgresConfig postgresConfig;
 
     /**
-     * Creates a DataSource that connects to a PostgreSQL database using the configuration provided by PostgresConfig.
+     * Creates a pooled DataSource that connects to a PostgreSQL database using the configuration provided by PostgresConfig.
+     * The pool size bounds concurrent queries; with virtual threads enabled it is the effective limit on
+     * concurrent blocking requests, callers beyond it wait up to the connection timeout.
      *
      * @return A DataSource connected to the PostgreSQL database.
      */
     @Bean
     public DataSource dataSource() {
-        DriverManagerDataSource dataSource = new DriverManagerDataSource();
+        HikariDataSource dataSource = new HikariDataSource();
         dataSource.setDriverClassName("org.postgresql.Driver");
         String url = String.format("jdbc:postgresql://%s:%d/%s", postgresConfig.getHost(), postgresConfig.getPort(), postgresConfig.getDatabase());
-        logger.info("Connecting to {} as {}", url, postgresConfig.getUsername());
-        dataSource.setUrl(url);
+        logger.info("Connecting to {} as {} (pool size {})", url, postgresConfig.getUsername(), postgresConfig.getMaxPoolSize());
+        dataSource.setJdbcUrl(url);
         dataSource.setUsername(postgresConfig.getUsername());
         dataSource.setPassword(postgresConfig.getPassword()); // TODO: Make password optional
+        dataSource.setMaximumPoolSize(postgresConfig.getMaxPoolSize());
+        dataSource.setConnectionTimeout(postgresConfig.getConnectionTimeoutMs());
+        dataSource.setPoolName("pqs");
         return dataSource;
     }
 
@@ -0,0 +1,141 @@
+package com.digitalasset.quickstart.umbra;
+
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Immutable columnar view of the BorrowPositions of one asset pair. The health-factor fields are held in
+ * primitive arrays so a full revaluation is a single branch-light loop over contiguous doubles, which the JIT
+ * can unroll and vectorize. Books above {@link #PARALLEL_THRESHOLD} positions are split across the common
+ * fork/join pool.
+ */
+public final class BorrowPositionColumns {
+
+    static final int PARALLEL_THRESHOLD = 1 << 16;
+    private static final int CHUNK = 1 << 14;
+    private static final double NO_DEBT = 999.0;
+
+    private final LiquidationPriceIndex.Position[] positions;
+    private final double[] borrowAmount;
+    private final double[] collateralAmount;
+    private final double[] entryIndex;
+    private final double[] liquidationThreshold;
+
+    private BorrowPositionColumns(LiquidationPriceIndex.Position[] positions) {
+        int n = positions.length;
+        this.positions = positions;
+        this.borrowAmount = new double[n];
+        this.collateralAmount = new double[n];
+        this.entryIndex = new double[n];
+        this.liquidationThreshold = new double[n];
+        for (int i = 0; i < n; i++) {
+            borrowAmount[i] = positions[i].borrowAmount();
+            collateralAmount[i] = positions[i].collateralAmount();
+            entryIndex[i] = positions[i].entryIndex();
+            liquidationThreshold[i] = positions[i].liquidationThreshold();
+        }
+    }
+
+    public static BorrowPositionColumns of(Collection<LiquidationPriceIndex.Position> positions) {
+        return new BorrowPositionColumns(positions.toArray(new LiquidationPriceIndex.Position[0]));
+    }
+
+    public int size() {
+        return positions.length;
+    }
+
+    public LiquidationPriceIndex.Position position(int i) {
+        return positions[i];
+    }
+
+    /**
+     * Health factor of every position at the given accumulated index and prices, written to {@code out}
+     * (same order as {@link #position(int)}). Same formula as {@link LiquidationPriceIndex.Position#healthFactor}.
+     */
+    public void healthFactors(double accIndex, double borrowPrice, double collateralPrice, double[] out) {
+        int n = positions.length;
+        if (out.length < n) throw new IllegalArgumentException("Output array too small: " + out.length + " < " + n);
+        if (n < PARALLEL_THRESHOLD) {
+            compute(0, n, accIndex, borrowPrice, collateralPrice, out);
+        } else {
+            ForkJoinPool.commonPool().invoke(new Revalue(0, n, accIndex, borrowPrice, collateralPrice, out));
+        }
+    }
+
+    /**
+     * Positions whose health factor is below 1.0, most at risk first.
+     */
+    public List<LiquidationPriceIndex.Position> liquidatable(double accIndex, double borrowPrice, double collateralPrice) {
+        double[] hf = new double[positions.length];
+        healthFactors(accIndex, borrowPrice, collateralPrice, hf);
+        int[] below = new int[hf.length];
+        int count = 0;
+        for (int i = 0; i < hf.length; i++) {
+            if (hf[i] < 1.0) below[count++] = i;
+        }
+        below = sortByKey(Arrays.copyOf(below, count), hf);
+        List<LiquidationPriceIndex.Position> out = new ArrayList<>(count);
+        for (int i : below) out.add(positions[i]);
+        return out;
+    }
+
+    /**
+     * Stable bottom-up merge sort of {@code idx} by {@code key[idx[i]]}, ascending, without boxing.
+     */
+    static int[] sortByKey(int[] idx, double[] key) {
+        int n = idx.length;
+        int[] src = idx, dst = new int[n];
+        for (int width = 1; width < n; width <<= 1) {
+            for (int lo = 0; lo < n; lo += width << 1) {
+                int mid = Math.min(lo + width, n), hi = Math.min(lo + (width << 1), n);
+                int i = lo, j = mid, k = lo;
+                while (i < mid && j < hi) dst[k++] = key[src[j]] < key[src[i]] ? src[j++] : src[i++];
+                while (i < mid) dst[k++] = src[i++];
+                while (j < hi) dst[k++] = src[j++];
+            }
+            int[] swap = src;
+            src = dst;
+            dst = swap;
+        }
+        return src;
+    }
+
+    private void compute(int from, int to, double accIndex, double borrowPrice, double collateralPrice, double[] out) {
+        final double[] b = borrowAmount, c = collateralAmount, e = entryIndex, t = liquidationThreshold;
+        for (int i = from; i < to; i++) {
+            double debtValue = b[i] * (accIndex / e[i]) * borrowPrice;
+            double collateralValue = c[i] * collateralPrice * t[i];
+            out[i] = debtValue == 0 ? NO_DEBT : collateralValue / debtValue;
+        }
+    }
+
+    @SuppressWarnings("serial")
+    private final class Revalue extends RecursiveAction {
+        private final int from, to;
+        private final double accIndex, borrowPrice, collateralPrice;
+        private final double[] out;
+
+        Revalue(int from, int to, double accIndex, double borrowPrice, double collateralPrice, double[] out) {
+            this.from = from;
+            this.to = to;
+            this.accIndex = accIndex;
+            this.borrowPrice = borrowPrice;
+            this.collateralPrice = collateralPrice;
+            this.out = out;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= CHUNK) {
+                BorrowPositionColumns.this.compute(from, to, accIndex, borrowPrice, collateralPrice, out);
+                return;
+            }
+            int mid = (from + to) >>> 1;
+            invokeAll(
+                    new Revalue(from, mid, accIndex, borrowPrice, collateralPrice, out),
+                    new Revalue(mid, to, accIndex, borrowPrice, collateralPrice, out)
+            );
+        }
+    }
+}
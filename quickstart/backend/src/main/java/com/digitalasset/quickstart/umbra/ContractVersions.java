@@ -0,0 +1,65 @@
+package com.digitalasset.quickstart.umbra;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Version tags for conditional GETs. While the projection is live, each template has a counter bumped on
+ * every create/archive, so an endpoint's tag only changes when a contract it reads from changes. Otherwise
+ * the tag is the PQS watermark offset, one cheap query instead of the endpoint's own. Projection tags carry a
+ * per-process nonce, because the counters restart from zero and a tag from before a restart must not match.
+ */
+@Component
+public class ContractVersions implements UmbraContractProjection.Listener {
+
+    private final UmbraRepository repo;
+    private final UmbraContractProjection projection;
+    private final Map<String, AtomicLong> versions = new ConcurrentHashMap<>();
+    private final AtomicLong epoch = new AtomicLong();
+    private final String instance = Long.toString(ThreadLocalRandom.current().nextLong() & Long.MAX_VALUE, 36);
+
+    @Autowired
+    public ContractVersions(UmbraRepository repo, UmbraContractProjection projection) {
+        this.repo = repo;
+        this.projection = projection;
+        projection.addListener(this);
+    }
+
+    @Override
+    public void onCreated(String template, String contractId, Map<String, Object> payload) {
+        bump(template);
+    }
+
+    @Override
+    public void onArchived(String template, String contractId) {
+        bump(template);
+    }
+
+    @Override
+    public void onReset() {
+        epoch.incrementAndGet();
+    }
+
+    /**
+     * Tag covering the given templates, or empty if no version source is available.
+     */
+    public Optional<String> tag(String... templates) {
+        if (projection.isLive()) {
+            StringBuilder tag = new StringBuilder("p").append(instance).append('-').append(epoch.get());
+            for (String template : templates) {
+                tag.append('.').append(versions.computeIfAbsent(template, t -> new AtomicLong()).get());
+            }
+            return Optional.of(tag.toString());
+        }
+        return repo.getPqsOffset().map(offset -> "o" + offset);
+    }
+
+    private void bump(String template) {
+        versions.computeIfAbsent(template, t -> new AtomicLong()).incrementAndGet();
+    }
+}
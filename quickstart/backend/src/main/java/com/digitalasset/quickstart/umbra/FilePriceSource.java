@@ -0,0 +1,63 @@
+package com.digitalasset.quickstart.umbra;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.OptionalDouble;
+import java.util.Properties;
+
+/**
+ * Prices from a local properties file ({@code CC=0.1612}, one asset per line) at
+ * {@code umbra.oracle-feed.file-path}. The file is re-read when its modification time changes, so it can be
+ * edited or rewritten by another process while the service runs.
+ */
+@Component
+public class FilePriceSource implements PriceSource {
+
+    private static final Logger logger = LoggerFactory.getLogger(FilePriceSource.class);
+
+    private final UmbraConfig config;
+    private volatile Properties prices = new Properties();
+    private volatile long loadedModified = -1;
+
+    @Autowired
+    public FilePriceSource(UmbraConfig config) {
+        this.config = config;
+    }
+
+    @Override
+    public String name() {
+        return "file";
+    }
+
+    @Override
+    public OptionalDouble fetch(String asset) {
+        String location = config.getOracleFeed().getFilePath();
+        if (location.isBlank()) return OptionalDouble.empty();
+        try {
+            reloadIfChanged(Path.of(location));
+            String value = prices.getProperty(asset);
+            return value == null ? OptionalDouble.empty() : OptionalDouble.of(Double.parseDouble(value.trim()));
+        } catch (IOException | NumberFormatException e) {
+            logger.debug("File price source could not read {} from {}", asset, location, e);
+            return OptionalDouble.empty();
+        }
+    }
+
+    private synchronized void reloadIfChanged(Path path) throws IOException {
+        long modified = Files.getLastModifiedTime(path).toMillis();
+        if (modified == loadedModified) return;
+        Properties fresh = new Properties();
+        try (Reader reader = Files.newBufferedReader(path)) {
+            fresh.load(reader);
+        }
+        prices = fresh;
+        loadedModified = modified;
+    }
+}
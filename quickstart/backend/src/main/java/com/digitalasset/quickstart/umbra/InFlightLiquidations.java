@@ -0,0 +1,66 @@
+package com.digitalasset.quickstart.umbra;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Predicate;
+
+/**
+ * BorrowPositions with a Liquidate command outstanding. A position is claimed when its command is
+ * submitted and stays claimed after a successful completion until the archive is observed, so a sweep
+ * running ahead of PQS or the projection doesn't submit it again. Claims expire after the timeout in
+ * case the archive is never seen.
+ */
+class InFlightLiquidations {
+
+    private record Claim(long claimedAtMillis, boolean completed) {}
+
+    private final Map<String, Claim> claims = new ConcurrentHashMap<>();
+    private final long timeoutMillis;
+
+    InFlightLiquidations(long timeoutMillis) {
+        this.timeoutMillis = timeoutMillis;
+    }
+
+    /**
+     * Claim a position for liquidation. False if it is already claimed and the claim hasn't expired.
+     */
+    boolean tryClaim(String contractId) {
+        long now = System.currentTimeMillis();
+        boolean[] claimed = {false};
+        claims.compute(contractId, (cid, existing) -> {
+            if (existing != null && now - existing.claimedAtMillis() < timeoutMillis) return existing;
+            claimed[0] = true;
+            return new Claim(now, false);
+        });
+        return claimed[0];
+    }
+
+    /**
+     * The Liquidate command finished. On success (or when the position turned out to be consumed already)
+     * the claim is held until the archive is observed; on any other failure it is released for a retry.
+     */
+    void completed(String contractId, boolean holdUntilArchived) {
+        if (holdUntilArchived) {
+            claims.computeIfPresent(contractId, (cid, claim) -> new Claim(claim.claimedAtMillis(), true));
+        } else {
+            claims.remove(contractId);
+        }
+    }
+
+    void archived(String contractId) {
+        claims.remove(contractId);
+    }
+
+    /**
+     * Drop completed claims on positions that are no longer active, and expired claims.
+     */
+    void prune(Predicate<String> active) {
+        long now = System.currentTimeMillis();
+        claims.entrySet().removeIf(e -> (e.getValue().completed() && !active.test(e.getKey()))
+                || now - e.getValue().claimedAtMillis() >= timeoutMillis);
+    }
+
+    int size() {
+        return claims.size();
+    }
+}
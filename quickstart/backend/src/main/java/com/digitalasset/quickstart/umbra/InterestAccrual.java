@@ -1,59 +1,107 @@
 package com.digitalasset.quickstart.umbra;
 
+import com.digitalasset.quickstart.umbra.LedgerSubmissionScheduler.Lane;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Component;
 
-import java.util.Map;
+import java.time.Duration;
+import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import static com.digitalasset.quickstart.umbra.ProtoHelper.*;
 
 /**
- * Calls AccrueInterest on the LendingPool every 60 seconds.
+ * Calls AccrueInterest on the LendingPool when it is needed rather than on a fixed timer: once the
+ * projected index has drifted past the configured threshold, when the maximum interval has elapsed, or
+ * when a liquidation sweep is about to act on positions. Reads in between use {@link InterestIndexProjector}.
+ * Accruals go through {@link LendingPoolSequencer}, so they never race Supply/Borrow on the pool contract.
  */
 @Component
 public class InterestAccrual {
 
     private static final Logger logger = LoggerFactory.getLogger(InterestAccrual.class);
 
-    private final UmbraRepository repo;
-    private final UmbraLedgerClient ledger;
+    private final LendingPoolSequencer poolSequencer;
+    private final InterestIndexProjector interestIndex;
     private final UmbraConfig config;
+    private final AtomicBoolean accruing = new AtomicBoolean();
 
     @Autowired
-    public InterestAccrual(UmbraRepository repo, UmbraLedgerClient ledger, UmbraConfig config) {
-        this.repo = repo;
-        this.ledger = ledger;
+    public InterestAccrual(LendingPoolSequencer poolSequencer, InterestIndexProjector interestIndex, UmbraConfig config) {
+        this.poolSequencer = poolSequencer;
+        this.interestIndex = interestIndex;
         this.config = config;
     }
 
-    @Scheduled(fixedRate = 60_000)
+    @Scheduled(fixedRateString = "${umbra.interest.check-interval-ms:10000}")
+    public void accrueIfDue() {
+        try {
+            interestIndex.now().ifPresent(projected -> {
+                UmbraConfig.Interest cfg = config.getInterest();
+                long sinceLastMs = Duration.between(projected.pool().lastUpdateTime(), projected.asOf()).toMillis();
+                if (driftBps(projected) >= cfg.getDriftThresholdBps() || sinceLastMs >= cfg.getMaxIntervalMs()) {
+                    accrueInterest();
+                }
+            });
+        } catch (Exception e) {
+            logger.debug("Interest accrual check error (may be normal if no pool exists)", e);
+        }
+    }
+
+    /**
+     * Bring the on-ledger index up to date ahead of liquidations, if it has drifted past the threshold.
+     */
+    public void accrueBeforeLiquidation() {
+        try {
+            interestIndex.now().ifPresent(projected -> {
+                if (driftBps(projected) >= config.getInterest().getDriftThresholdBps()) accrueInterest();
+            });
+        } catch (Exception e) {
+            logger.debug("Interest accrual check error (may be normal if no pool exists)", e);
+        }
+    }
+
     public void accrueInterest() {
         String operator = config.getOperatorParty();
         if (operator.isEmpty()) return;
+        if (!accruing.compareAndSet(false, true)) return;
 
         try {
-            Optional<Map<String, Object>> poolOpt = repo.getLendingPool();
-            if (poolOpt.isEmpty()) return;
+            Optional<String> poolCid = poolSequencer.currentPoolContractId();
+            if (poolCid.isEmpty()) {
+                accruing.set(false);
+                return;
+            }
 
-            String contractId = (String) poolOpt.get().get("contractId");
-
-            ledger.exerciseChoice(
-                    contractId,
-                    "Umbra.Lending", "LendingPool",
+            poolSequencer.submit(
+                    Lane.MAINTENANCE,
+                    UmbraLedgerClient.commandId("accrue-interest", poolCid.get()),
                     "AccrueInterest",
                     unitVal(),
-                    operator
-            ).thenAccept(tx -> logger.debug("Accrued interest (tx: {})", tx.getUpdateId()))
+                    List.of(operator)
+            ).whenComplete((tx, e) -> accruing.set(false))
+             .thenAccept(tx -> logger.debug("Accrued interest (tx: {})", tx.updateId()))
              .exceptionally(e -> {
-                 logger.error("Failed to accrue interest", e);
+                 if (UmbraLedgerClient.isDuplicateCommand(e)) {
+                     logger.debug("Interest accrual on {} already applied", poolCid.get());
+                 } else {
+                     logger.error("Failed to accrue interest", e);
+                 }
                  return null;
              });
         } catch (Exception e) {
+            accruing.set(false);
             logger.debug("Interest accrual error (may be normal if no pool exists)", e);
         }
     }
+
+    private static double driftBps(InterestIndexProjector.ProjectedPool projected) {
+        double ledgerIndex = projected.pool().accumulatedIndex().doubleValue();
+        if (ledgerIndex <= 0) return 0.0;
+        return (projected.index() / ledgerIndex - 1.0) * 10_000.0;
+    }
 }
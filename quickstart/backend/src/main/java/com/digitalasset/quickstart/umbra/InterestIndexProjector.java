@@ -0,0 +1,154 @@
+package com.digitalasset.quickstart.umbra;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.*;
+
+/**
+ * Projects the LendingPool's accumulated index and rates to any instant from the last on-ledger state,
+ * without a ledger write. Uses the same kinked rate model and simple-interest step as
+ * {@code LendingPool.AccrueInterest}, in Daml {@code Decimal} arithmetic (scale 10, half-even rounding),
+ * so the projected index equals what AccrueInterest would record at that instant.
+ */
+@Component
+public class InterestIndexProjector {
+
+    private static final int SCALE = 10;
+    private static final BigDecimal SECONDS_PER_YEAR = new BigDecimal("31536000.0");
+    private static final BigDecimal MICROS_PER_SECOND = new BigDecimal("1000000.0");
+    private static final double SUPPLY_SHARE = 0.90;
+
+    /**
+     * LendingPool fields relevant to interest accrual, as recorded on ledger.
+     */
+    public record PoolState(
+            String contractId,
+            String asset,
+            BigDecimal totalSupply,
+            BigDecimal totalBorrows,
+            BigDecimal accumulatedIndex,
+            Instant lastUpdateTime,
+            BigDecimal baseRate,
+            BigDecimal multiplier,
+            BigDecimal jumpMultiplier,
+            BigDecimal kink,
+            Map<String, Object> payload
+    ) {}
+
+    /**
+     * Pool state projected to {@code asOf}. Rates are those in effect after accruing up to {@code asOf}.
+     */
+    public record ProjectedPool(
+            PoolState pool,
+            Instant asOf,
+            BigDecimal accumulatedIndex,
+            BigDecimal totalBorrows,
+            double utilization,
+            double borrowApy,
+            double supplyApy
+    ) {
+        public double index() {
+            return accumulatedIndex.doubleValue();
+        }
+    }
+
+    private final UmbraRepository repo;
+    private volatile PoolState parsed;
+
+    @Autowired
+    public InterestIndexProjector(UmbraRepository repo) {
+        this.repo = repo;
+    }
+
+    public Optional<ProjectedPool> now() {
+        return at(Instant.now());
+    }
+
+    public Optional<ProjectedPool> at(Instant asOf) {
+        return currentPool().map(pool -> project(pool, asOf));
+    }
+
+    /**
+     * Last on-ledger pool state; parsed once per pool contract.
+     */
+    public Optional<PoolState> currentPool() {
+        Optional<Map<String, Object>> row = repo.getLendingPool();
+        if (row.isEmpty()) return Optional.empty();
+        String contractId = (String) row.get().get("contractId");
+        PoolState cached = parsed;
+        if (cached != null && cached.contractId().equals(contractId)) return Optional.of(cached);
+        @SuppressWarnings("unchecked")
+        Map<String, Object> payload = (Map<String, Object>) row.get().get("payload");
+        PoolState fresh = parse(contractId, payload);
+        parsed = fresh;
+        return Optional.of(fresh);
+    }
+
+    public static ProjectedPool project(PoolState pool, Instant asOf) {
+        long elapsedMicros = Math.max(0, Duration.between(pool.lastUpdateTime(), asOf).toNanos() / 1_000);
+        BigDecimal elapsedSeconds = div(BigDecimal.valueOf(elapsedMicros), MICROS_PER_SECOND);
+        BigDecimal borrowRate = borrowRate(pool, utilization(pool.totalSupply(), pool.totalBorrows()));
+        BigDecimal interestFactor = div(mul(borrowRate, elapsedSeconds), SECONDS_PER_YEAR);
+        BigDecimal growth = BigDecimal.ONE.add(interestFactor);
+        BigDecimal totalBorrows = mul(pool.totalBorrows(), growth);
+        BigDecimal index = mul(pool.accumulatedIndex(), growth);
+
+        BigDecimal utilization = utilization(pool.totalSupply(), totalBorrows);
+        double borrowApy = borrowRate(pool, utilization).doubleValue();
+        double supplyApy = borrowApy * utilization.doubleValue() * SUPPLY_SHARE;
+        return new ProjectedPool(pool, asOf, index, totalBorrows, utilization.doubleValue(), borrowApy, supplyApy);
+    }
+
+    private static BigDecimal utilization(BigDecimal totalSupply, BigDecimal totalBorrows) {
+        return totalSupply.signum() == 0 ? BigDecimal.ZERO : div(totalBorrows, totalSupply);
+    }
+
+    private static BigDecimal borrowRate(PoolState pool, BigDecimal utilization) {
+        if (utilization.compareTo(pool.kink()) <= 0) {
+            return pool.baseRate().add(mul(utilization, pool.multiplier()));
+        }
+        BigDecimal normalRate = pool.baseRate().add(mul(pool.kink(), pool.multiplier()));
+        BigDecimal excessUtil = utilization.subtract(pool.kink());
+        return normalRate.add(mul(excessUtil, pool.jumpMultiplier()));
+    }
+
+    private static BigDecimal mul(BigDecimal a, BigDecimal b) {
+        return a.multiply(b).setScale(SCALE, RoundingMode.HALF_EVEN);
+    }
+
+    private static BigDecimal div(BigDecimal a, BigDecimal b) {
+        return a.divide(b, SCALE, RoundingMode.HALF_EVEN);
+    }
+
+    static PoolState parse(String contractId, Map<String, Object> payload) {
+        Map<?, ?> rateModel = payload.get("rateModel") instanceof Map<?, ?> rm ? rm : Map.of();
+        Object lastUpdate = payload.get("lastUpdateTime");
+        return new PoolState(
+                contractId,
+                String.valueOf(payload.get("asset")),
+                decimal(payload.get("totalSupply")),
+                decimal(payload.get("totalBorrows")),
+                decimal(payload.get("accumulatedIndex")),
+                lastUpdate == null ? Instant.now() : Instant.parse(String.valueOf(lastUpdate)),
+                decimal(rateModel.get("baseRate")),
+                decimal(rateModel.get("multiplier")),
+                decimal(rateModel.get("jumpMultiplier")),
+                decimal(rateModel.get("kink")),
+                payload
+        );
+    }
+
+    private static BigDecimal decimal(Object value) {
+        if (value == null) return BigDecimal.ZERO;
+        try {
+            return new BigDecimal(String.valueOf(value));
+        } catch (NumberFormatException e) {
+            return BigDecimal.ZERO;
+        }
+    }
+}
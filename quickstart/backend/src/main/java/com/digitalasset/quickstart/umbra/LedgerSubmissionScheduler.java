@@ -0,0 +1,142 @@
+package com.digitalasset.quickstart.umbra;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Priority lanes for ledger submissions. Each lane has its own concurrency budget; queued work is
+ * dispatched highest lane first, and a lane may only start when the idle budget of all higher lanes
+ * still fits under the global cap. A burst of user writes can therefore never occupy the capacity
+ * reserved for liquidations and fills.
+ * Per-lane queue time is published as {@code umbra.ledger.queue.time}, queue depth as {@code umbra.ledger.queue.depth}.
+ */
+@Component
+public class LedgerSubmissionScheduler {
+
+    /**
+     * Submission lanes in priority order.
+     */
+    public enum Lane {
+        /** Liquidations protecting pool solvency. */
+        LIQUIDATION,
+        /** Matching engine fills. */
+        FILL,
+        /** Oracle updates and interest accrual. */
+        MAINTENANCE,
+        /** Writes on behalf of REST clients. */
+        USER
+    }
+
+    private final Map<Lane, LaneState> lanes = new EnumMap<>(Lane.class);
+    private final int maxInFlight;
+    private final Object lock = new Object();
+    private int totalInFlight = 0;
+
+    @Autowired
+    public LedgerSubmissionScheduler(UmbraConfig config, MeterRegistry meterRegistry) {
+        UmbraConfig.Submission cfg = config.getSubmission();
+        this.maxInFlight = cfg.getMaxInFlight();
+        lanes.put(Lane.LIQUIDATION, new LaneState(Lane.LIQUIDATION, cfg.getLiquidationBudget(), meterRegistry));
+        lanes.put(Lane.FILL, new LaneState(Lane.FILL, cfg.getFillBudget(), meterRegistry));
+        lanes.put(Lane.MAINTENANCE, new LaneState(Lane.MAINTENANCE, cfg.getMaintenanceBudget(), meterRegistry));
+        lanes.put(Lane.USER, new LaneState(Lane.USER, cfg.getUserBudget(), meterRegistry));
+    }
+
+    /**
+     * Run {@code submission} once its lane has capacity. The returned future completes with its result.
+     */
+    public <T> CompletableFuture<T> submit(Lane lane, Supplier<CompletableFuture<T>> submission) {
+        Task<T> task = new Task<>(submission);
+        LaneState state = lanes.get(lane);
+        synchronized (lock) {
+            state.queue.add(task);
+            state.queued.incrementAndGet();
+        }
+        dispatch();
+        return task.result;
+    }
+
+    private void dispatch() {
+        List<Runnable> ready = new ArrayList<>();
+        synchronized (lock) {
+            int idleAbove = 0;
+            for (Lane lane : Lane.values()) {
+                LaneState state = lanes.get(lane);
+                while (!state.queue.isEmpty()
+                        && state.inFlight < state.budget
+                        && totalInFlight + idleAbove < maxInFlight) {
+                    Task<?> task = state.queue.poll();
+                    state.queued.decrementAndGet();
+                    state.inFlight++;
+                    totalInFlight++;
+                    ready.add(() -> start(state, task));
+                }
+                idleAbove += Math.max(0, state.budget - state.inFlight);
+            }
+        }
+        ready.forEach(Runnable::run);
+    }
+
+    private <T> void start(LaneState state, Task<T> task) {
+        state.queueTime.record(System.nanoTime() - task.enqueuedNanos, TimeUnit.NANOSECONDS);
+        CompletableFuture<T> pending;
+        try {
+            pending = task.submission.get();
+        } catch (Exception e) {
+            pending = CompletableFuture.failedFuture(e);
+        }
+        pending.whenComplete((value, error) -> {
+            synchronized (lock) {
+                state.inFlight--;
+                totalInFlight--;
+            }
+            dispatch();
+            if (error != null) {
+                task.result.completeExceptionally(error);
+            } else {
+                task.result.complete(value);
+            }
+        });
+    }
+
+    private static class LaneState {
+        final int budget;
+        final ArrayDeque<Task<?>> queue = new ArrayDeque<>();
+        final AtomicInteger queued = new AtomicInteger();
+        final Timer queueTime;
+        int inFlight = 0;
+
+        LaneState(Lane lane, int budget, MeterRegistry meterRegistry) {
+            this.budget = budget;
+            String tag = lane.name().toLowerCase(Locale.ROOT);
+            this.queueTime = Timer.builder("umbra.ledger.queue.time")
+                    .description("Time a ledger submission waited for its lane")
+                    .tag("lane", tag)
+                    .publishPercentiles(0.5, 0.99)
+                    .register(meterRegistry);
+            Gauge.builder("umbra.ledger.queue.depth", queued, AtomicInteger::get)
+                    .description("Ledger submissions waiting for their lane")
+                    .tag("lane", tag)
+                    .register(meterRegistry);
+        }
+    }
+
+    private static class Task<T> {
+        final Supplier<CompletableFuture<T>> submission;
+        final CompletableFuture<T> result = new CompletableFuture<>();
+        final long enqueuedNanos = System.nanoTime();
+
+        Task(Supplier<CompletableFuture<T>> submission) {
+            this.submission = submission;
+        }
+    }
+}
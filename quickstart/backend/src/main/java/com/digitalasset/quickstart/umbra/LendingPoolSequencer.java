@@ -0,0 +1,124 @@
+package com.digitalasset.quickstart.umbra;
+
+import com.daml.ledger.api.v2.ValueOuterClass;
+import com.digitalasset.quickstart.umbra.LedgerSubmissionScheduler.Lane;
+import com.digitalasset.quickstart.umbra.UmbraLedgerClient.ResultShape;
+import com.digitalasset.quickstart.umbra.UmbraLedgerClient.WriteResult;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.stereotype.Component;
+
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+
+import static com.digitalasset.quickstart.umbra.UmbraConfig.LENDING_POOL_TEMPLATE;
+
+/**
+ * Single writer for choices that consume and re-create the LendingPool (Supply, Borrow, AccrueInterest).
+ * Submissions are chained: each one starts after the previous pool write completed and targets the pool
+ * contract id that write created (requested as a template-filtered result), so concurrent callers never
+ * race on the same contract id. Pool lookups between writes run on the application task executor
+ * (virtual threads when enabled), never on the common fork/join pool.
+ */
+@Component
+public class LendingPoolSequencer {
+
+    private static final Logger logger = LoggerFactory.getLogger(LendingPoolSequencer.class);
+
+    private final UmbraRepository repo;
+    private final UmbraLedgerClient ledger;
+    private final Executor taskExecutor;
+
+    private final Object lock = new Object();
+    private CompletableFuture<?> tail = CompletableFuture.completedFuture(null);
+    private volatile String latestPoolCid;
+    private final List<Consumer<String>> poolWriteListeners = new CopyOnWriteArrayList<>();
+
+    @Autowired
+    public LendingPoolSequencer(
+            UmbraRepository repo,
+            UmbraLedgerClient ledger,
+            @Qualifier("applicationTaskExecutor") Executor taskExecutor
+    ) {
+        this.repo = repo;
+        this.ledger = ledger;
+        this.taskExecutor = taskExecutor;
+    }
+
+    /**
+     * Queue a LendingPool choice behind all previously submitted pool writes.
+     * Completes exceptionally with {@link NoSuchElementException} if no pool exists.
+     */
+    public CompletableFuture<WriteResult> submit(
+            Lane lane,
+            String commandId,
+            String choiceName,
+            ValueOuterClass.Value choiceArg,
+            List<String> actAs
+    ) {
+        synchronized (lock) {
+            CompletableFuture<WriteResult> result = tail
+                    .handle((r, e) -> null)
+                    .thenComposeAsync(ignored -> exercise(lane, commandId, choiceName, choiceArg, actAs), taskExecutor);
+            tail = result;
+            return result;
+        }
+    }
+
+    /**
+     * Run {@code listener} with the choice name after every successful pool write, i.e. whenever the pool
+     * state may have changed.
+     */
+    public void addPoolWriteListener(Consumer<String> listener) {
+        poolWriteListeners.add(listener);
+    }
+
+    /**
+     * Pool contract id the next queued write would target: the one created by the last successful
+     * write, or the one PQS reports if there is none yet.
+     */
+    public Optional<String> currentPoolContractId() {
+        String cid = latestPoolCid;
+        return cid != null ? Optional.of(cid) : repo.getLendingPoolContractId();
+    }
+
+    private CompletableFuture<WriteResult> exercise(
+            Lane lane,
+            String commandId,
+            String choiceName,
+            ValueOuterClass.Value choiceArg,
+            List<String> actAs
+    ) {
+        Optional<String> poolCid = currentPoolContractId();
+        if (poolCid.isEmpty()) {
+            return CompletableFuture.failedFuture(new NoSuchElementException("LendingPool not found"));
+        }
+        return ledger.exerciseChoice(
+                lane,
+                commandId,
+                poolCid.get(),
+                this::resolvePoolContractId,
+                "Umbra.Lending", "LendingPool",
+                choiceName,
+                choiceArg,
+                actAs,
+                ResultShape.created(LENDING_POOL_TEMPLATE)
+        ).whenComplete((result, e) -> {
+            latestPoolCid = e == null ? result.createdContractId(LENDING_POOL_TEMPLATE).orElse(null) : null;
+            if (e == null) {
+                logger.debug("{} on LendingPool produced {}", choiceName, latestPoolCid);
+                poolWriteListeners.forEach(listener -> listener.accept(choiceName));
+            }
+        });
+    }
+
+    private Optional<String> resolvePoolContractId() {
+        latestPoolCid = null;
+        return repo.getLendingPoolContractId();
+    }
+}
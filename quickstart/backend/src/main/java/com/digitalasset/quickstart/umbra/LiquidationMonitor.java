@@ -1,6 +1,12 @@
 package com.digitalasset.quickstart.umbra;
 
 import com.daml.ledger.api.v2.ValueOuterClass;
+import com.digitalasset.quickstart.umbra.LedgerSubmissionScheduler.Lane;
+import com.digitalasset.quickstart.umbra.UmbraLedgerClient.ResultShape;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -8,107 +14,217 @@ import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Component;
 
 import java.util.*;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import static com.digitalasset.quickstart.umbra.ProtoHelper.*;
+import static com.digitalasset.quickstart.umbra.UmbraConfig.BORROW_POSITION_TEMPLATE;
+import static com.digitalasset.quickstart.umbra.UmbraConfig.LENDING_POOL_TEMPLATE;
+import static com.digitalasset.quickstart.umbra.UmbraConfig.ORACLE_PRICE_TEMPLATE;
 
 /**
  * Monitors all BorrowPositions and triggers liquidation when health factor < 1.0.
- * Runs every 30 seconds.
+ * A sweep runs shortly after an OraclePrice or LendingPool change is observed (from the projection or from
+ * our own writes), debounced so a burst of updates yields one sweep; a periodic sweep remains as a safety
+ * net for anything missed. Event-driven sweeps take candidates from the crossed prefix of
+ * {@link LiquidationPriceIndex}; the periodic sweep revalues every position from its columnar snapshot
+ * ({@link BorrowPositionColumns}) so an ordering problem in the index cannot hide a position.
+ * Positions with a Liquidate command outstanding are skipped ({@link InFlightLiquidations}); the number of
+ * skipped candidates is published as {@code umbra.liquidation.suppressed}.
  */
 @Component
-public class LiquidationMonitor {
+public class LiquidationMonitor implements UmbraContractProjection.Listener {
 
     private static final Logger logger = LoggerFactory.getLogger(LiquidationMonitor.class);
 
     private final UmbraRepository repo;
     private final UmbraLedgerClient ledger;
     private final UmbraConfig config;
+    private final UmbraContractProjection projection;
+    private final LiquidationPriceIndex index;
+    private final OraclePriceCache oracleCache;
+    private final InterestIndexProjector interestIndex;
+    private final InterestAccrual interestAccrual;
+    private final InFlightLiquidations inFlight;
+    private final Counter suppressed;
+    private final AtomicBoolean sweepPending = new AtomicBoolean();
+    private final ScheduledExecutorService sweeper = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "umbra-liquidation");
+        t.setDaemon(true);
+        return t;
+    });
 
     @Autowired
-    public LiquidationMonitor(UmbraRepository repo, UmbraLedgerClient ledger, UmbraConfig config) {
+    public LiquidationMonitor(
+            UmbraRepository repo,
+            UmbraLedgerClient ledger,
+            UmbraConfig config,
+            UmbraContractProjection projection,
+            LiquidationPriceIndex index,
+            OraclePriceCache oracleCache,
+            InterestIndexProjector interestIndex,
+            InterestAccrual interestAccrual,
+            LendingPoolSequencer poolSequencer,
+            MeterRegistry meterRegistry
+    ) {
         this.repo = repo;
         this.ledger = ledger;
         this.config = config;
+        this.projection = projection;
+        this.index = index;
+        this.oracleCache = oracleCache;
+        this.interestIndex = interestIndex;
+        this.interestAccrual = interestAccrual;
+        this.inFlight = new InFlightLiquidations(config.getLiquidation().getInFlightTimeoutMs());
+        this.suppressed = Counter.builder("umbra.liquidation.suppressed")
+                .description("Liquidation candidates skipped because a Liquidate command is already outstanding")
+                .register(meterRegistry);
+        Gauge.builder("umbra.liquidation.in.flight", inFlight, InFlightLiquidations::size)
+                .description("Positions with a Liquidate command outstanding")
+                .register(meterRegistry);
+        projection.addListener(this);
+        // AccrueInterest doesn't change the projected index sweeps use, and sweeps trigger it themselves
+        poolSequencer.addPoolWriteListener(choice -> {
+            if (!"AccrueInterest".equals(choice)) requestSweep();
+        });
     }
 
-    @Scheduled(fixedRate = 30_000)
+    @PreDestroy
+    public void stop() {
+        sweeper.shutdownNow();
+    }
+
+    @Override
+    public void onCreated(String template, String contractId, Map<String, Object> payload) {
+        if (ORACLE_PRICE_TEMPLATE.equals(template) || LENDING_POOL_TEMPLATE.equals(template)) requestSweep();
+    }
+
+    @Override
+    public void onArchived(String template, String contractId) {
+        if (BORROW_POSITION_TEMPLATE.equals(template)) inFlight.archived(contractId);
+    }
+
+    /**
+     * Schedule a sweep after the debounce delay; requests arriving before it starts are folded into it.
+     */
+    public void requestSweep() {
+        if (!sweepPending.compareAndSet(false, true)) return;
+        try {
+            sweeper.schedule(() -> {
+                sweepPending.set(false);
+                sweep(false);
+            }, config.getLiquidation().getSweepDebounceMs(), TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            sweepPending.set(false);
+        }
+    }
+
+    @Scheduled(fixedRateString = "${umbra.liquidation.safety-net-interval-ms:30000}")
     public void checkLiquidations() {
+        sweep(true);
+    }
+
+    private synchronized void sweep(boolean full) {
         String operator = config.getOperatorParty();
         if (operator.isEmpty()) return;
 
         try {
-            List<Map<String, Object>> positions = repo.getAllBorrowPositions();
-            if (positions.isEmpty()) return;
-
-            // Get oracle prices for health factor calculation
-            Optional<Map<String, Object>> borrowOracle = repo.getOraclePrice("USDC");
-            Optional<Map<String, Object>> collateralOracle = repo.getOraclePrice("CC");
-            if (borrowOracle.isEmpty() || collateralOracle.isEmpty()) {
-                logger.debug("Oracle prices not available for liquidation check");
-                return;
-            }
+            // Without the projection feeding it, bring the index in line with PQS first
+            if (!projection.isLive()) index.reconcile(repo.getAllBorrowPositions());
+            inFlight.prune(index::contains);
+            if (index.size() == 0) return;
 
-            // Get lending pool for accumulated index
-            Optional<Map<String, Object>> poolOpt = repo.getLendingPool();
-            if (poolOpt.isEmpty()) return;
-
-            @SuppressWarnings("unchecked")
-            Map<String, Object> poolPayload = (Map<String, Object>) poolOpt.get().get("payload");
-            double accIndex = Double.parseDouble(String.valueOf(poolPayload.get("accumulatedIndex")));
-
-            @SuppressWarnings("unchecked")
-            Map<String, Object> borrowOraclePayload = (Map<String, Object>) borrowOracle.get().get("payload");
-            double borrowPrice = Double.parseDouble(String.valueOf(borrowOraclePayload.get("price")));
-
-            @SuppressWarnings("unchecked")
-            Map<String, Object> collOraclePayload = (Map<String, Object>) collateralOracle.get().get("payload");
-            double collPrice = Double.parseDouble(String.valueOf(collOraclePayload.get("price")));
-
-            String borrowOracleCid = (String) borrowOracle.get().get("contractId");
-            String collOracleCid = (String) collateralOracle.get().get("contractId");
-
-            for (Map<String, Object> pos : positions) {
-                @SuppressWarnings("unchecked")
-                Map<String, Object> payload = (Map<String, Object>) pos.get("payload");
-                String contractId = (String) pos.get("contractId");
-
-                double borrowAmount = Double.parseDouble(String.valueOf(payload.get("borrowAmount")));
-                double collateralAmount = Double.parseDouble(String.valueOf(payload.get("collateralAmount")));
-                double entryIndex = Double.parseDouble(String.valueOf(payload.get("entryIndex")));
-                double liquidationThreshold = Double.parseDouble(String.valueOf(payload.get("liquidationThreshold")));
-
-                // Calculate health factor locally
-                double growthFactor = accIndex / entryIndex;
-                double currentDebt = borrowAmount * growthFactor;
-                double debtValue = currentDebt * borrowPrice;
-                double collateralValue = collateralAmount * collPrice;
-                double healthFactor = debtValue == 0 ? 999.0 : (collateralValue * liquidationThreshold) / debtValue;
-
-                if (healthFactor < 1.0) {
-                    logger.warn("Liquidating position {} with health factor {}", contractId, healthFactor);
-
-                    ValueOuterClass.Value choiceArg = recordVal(
-                            field("liquidator", partyVal(operator)),
-                            field("borrowOracleCid", contractIdVal(borrowOracleCid)),
-                            field("collateralOracleCid", contractIdVal(collOracleCid)),
-                            field("currentIndex", numericVal(accIndex))
-                    );
-
-                    ledger.exerciseChoice(
-                            contractId,
-                            "Umbra.Lending", "BorrowPosition",
-                            "Liquidate",
-                            choiceArg,
-                            operator
-                    ).thenAccept(tx -> logger.info("Liquidated position {} (tx: {})", contractId, tx.getUpdateId()))
-                     .exceptionally(e -> {
-                         logger.error("Failed to liquidate position {}", contractId, e);
-                         return null;
-                     });
-                }
+            // Accumulated index projected to now, so debt includes interest since the last accrual
+            Optional<InterestIndexProjector.ProjectedPool> pool = interestIndex.now();
+            if (pool.isEmpty()) return;
+
+            for (String[] pair : index.pairs()) {
+                checkPair(operator, pair[0], pair[1], pool.get(), full);
             }
         } catch (Exception e) {
             logger.debug("Liquidation check error (may be normal if no contracts exist)", e);
         }
     }
+
+    private void checkPair(
+            String operator,
+            String borrowAsset,
+            String collateralAsset,
+            InterestIndexProjector.ProjectedPool pool,
+            boolean full
+    ) {
+        double accIndex = pool.index();
+        // Resolve both legs of the pair against the oracle cache
+        Optional<OraclePriceCache.Quote> borrowOracle = oracleCache.get(borrowAsset);
+        Optional<OraclePriceCache.Quote> collateralOracle = oracleCache.get(collateralAsset);
+        if (borrowOracle.isEmpty() || collateralOracle.isEmpty()) {
+            logger.debug("Oracle prices not available for {}/{} liquidation check", borrowAsset, collateralAsset);
+            return;
+        }
+
+        double borrowPrice = borrowOracle.get().price();
+        double collPrice = collateralOracle.get().price();
+        String borrowOracleCid = borrowOracle.get().contractId();
+        String collOracleCid = collateralOracle.get().contractId();
+
+        List<LiquidationPriceIndex.Position> candidates = full
+                ? index.columns(borrowAsset, collateralAsset).liquidatable(accIndex, borrowPrice, collPrice)
+                : index.liquidatable(borrowAsset, collateralAsset, accIndex, borrowPrice, collPrice);
+        List<LiquidationPriceIndex.Position> claimed = new ArrayList<>();
+        for (LiquidationPriceIndex.Position position : candidates) {
+            if (inFlight.tryClaim(position.contractId())) {
+                claimed.add(position);
+            } else {
+                suppressed.increment();
+            }
+        }
+        // Liquidate is evaluated at the projected index; accrue alongside so the pool reflects it too
+        if (!claimed.isEmpty()) interestAccrual.accrueBeforeLiquidation();
+        for (LiquidationPriceIndex.Position position : claimed) {
+            String contractId = position.contractId();
+            logger.warn("Liquidating position {} with health factor {}",
+                    contractId, position.healthFactor(accIndex, borrowPrice, collPrice));
+
+            ValueOuterClass.Value choiceArg = recordVal(
+                    field("liquidator", partyVal(operator)),
+                    field("borrowOracleCid", contractIdVal(borrowOracleCid)),
+                    field("collateralOracleCid", contractIdVal(collOracleCid)),
+                    field("currentIndex", numericVal(pool.accumulatedIndex().toPlainString()))
+            );
+
+            ledger.exerciseChoice(
+                    Lane.LIQUIDATION,
+                    UmbraLedgerClient.commandId("liquidate", contractId),
+                    contractId,
+                    null,
+                    "Umbra.Lending", "BorrowPosition",
+                    "Liquidate",
+                    choiceArg,
+                    List.of(operator),
+                    ResultShape.COMPLETION
+            ).thenAccept(tx -> {
+                inFlight.completed(contractId, true);
+                logger.info("Liquidated position {} (tx: {})", contractId, tx.updateId());
+            }).exceptionally(e -> {
+                if (UmbraLedgerClient.isDuplicateCommand(e)) {
+                    inFlight.completed(contractId, true);
+                    logger.debug("Liquidation of {} already submitted", contractId);
+                } else if (UmbraLedgerClient.isContentionOn(e, contractId) || !index.contains(contractId)) {
+                    inFlight.completed(contractId, true);
+                    logger.debug("Position {} already consumed", contractId);
+                } else if (UmbraLedgerClient.isContentionError(e)) {
+                    // Another input (typically an oracle replaced by UpdatePrice) moved; retry with fresh cids
+                    inFlight.completed(contractId, false);
+                    logger.debug("Liquidation of {} lost a race on another input, will retry", contractId);
+                } else {
+                    inFlight.completed(contractId, false);
+                    logger.error("Failed to liquidate position {}", contractId, e);
+                }
+                return null;
+            });
+        }
+    }
 }
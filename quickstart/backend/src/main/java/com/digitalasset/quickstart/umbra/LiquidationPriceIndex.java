@@ -0,0 +1,196 @@
+package com.digitalasset.quickstart.umbra;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+
+import static com.digitalasset.quickstart.umbra.UmbraConfig.BORROW_POSITION_TEMPLATE;
+
+/**
+ * BorrowPositions per borrow/collateral asset pair, ordered by how close they are to liquidation.
+ * <p>
+ * A position's health factor is {@code C * Pc * T / (B * (I / E) * Pb)}, so it becomes liquidatable once
+ * {@code Pc / (I * Pb)} drops below {@code k = B / (E * C * T)}. {@code k} depends only on the position, so
+ * the index keeps positions sorted by descending {@code k}; for the current collateral price, borrow price
+ * and accumulated index the liquidatable positions are exactly the prefix with {@code k} above the threshold.
+ * Kept current from projection events, or reconciled against a PQS snapshot when the projection is off.
+ */
+@Component
+public class LiquidationPriceIndex implements UmbraContractProjection.Listener {
+
+    /**
+     * Parsed BorrowPosition fields plus its liquidation key {@code k}.
+     */
+    public record Position(
+            String contractId,
+            String borrowAsset,
+            String collateralAsset,
+            double borrowAmount,
+            double collateralAmount,
+            double entryIndex,
+            double liquidationThreshold,
+            double k
+    ) {
+        public double healthFactor(double accIndex, double borrowPrice, double collateralPrice) {
+            double debtValue = borrowAmount * (accIndex / entryIndex) * borrowPrice;
+            double collateralValue = collateralAmount * collateralPrice;
+            return debtValue == 0 ? 999.0 : (collateralValue * liquidationThreshold) / debtValue;
+        }
+    }
+
+    private static final Comparator<Position> MOST_AT_RISK_FIRST = Comparator
+            .comparingDouble(Position::k).reversed()
+            .thenComparing(Position::contractId);
+
+    private final Map<String, Position> byContractId = new ConcurrentHashMap<>();
+    private final Map<String, ConcurrentSkipListSet<Position>> byPair = new ConcurrentHashMap<>();
+    private final Map<String, BorrowPositionColumns> columns = new ConcurrentHashMap<>();
+
+    @Autowired
+    public LiquidationPriceIndex(UmbraContractProjection projection) {
+        projection.addListener(this);
+    }
+
+    @Override
+    public void onCreated(String template, String contractId, Map<String, Object> payload) {
+        if (BORROW_POSITION_TEMPLATE.equals(template)) put(contractId, payload);
+    }
+
+    @Override
+    public void onArchived(String template, String contractId) {
+        if (BORROW_POSITION_TEMPLATE.equals(template)) remove(contractId);
+    }
+
+    @Override
+    public void onReset() {
+        byContractId.clear();
+        byPair.clear();
+        columns.clear();
+    }
+
+    /**
+     * Align the index with a full snapshot of active BorrowPositions (rows of {@code contractId}/{@code payload}).
+     * Only positions not yet indexed are parsed.
+     */
+    public void reconcile(List<Map<String, Object>> positions) {
+        Set<String> active = new HashSet<>();
+        for (Map<String, Object> row : positions) {
+            String contractId = (String) row.get("contractId");
+            active.add(contractId);
+            if (!byContractId.containsKey(contractId)) {
+                @SuppressWarnings("unchecked")
+                Map<String, Object> payload = (Map<String, Object>) row.get("payload");
+                put(contractId, payload);
+            }
+        }
+        for (String contractId : new ArrayList<>(byContractId.keySet())) {
+            if (!active.contains(contractId)) remove(contractId);
+        }
+    }
+
+    /**
+     * Asset pairs ({@code [borrowAsset, collateralAsset]}) with at least one open position.
+     */
+    public List<String[]> pairs() {
+        List<String[]> out = new ArrayList<>();
+        for (var e : byPair.entrySet()) {
+            if (!e.getValue().isEmpty()) out.add(e.getKey().split("/", 2));
+        }
+        return out;
+    }
+
+    /**
+     * Positions of the pair that are liquidatable at the given prices and index, most at risk first.
+     * Walks only the crossed prefix of the index.
+     */
+    public List<Position> liquidatable(String borrowAsset, String collateralAsset,
+                                       double accIndex, double borrowPrice, double collateralPrice) {
+        ConcurrentSkipListSet<Position> positions = byPair.get(pairKey(borrowAsset, collateralAsset));
+        if (positions == null) return List.of();
+        double threshold = collateralPrice / (accIndex * borrowPrice);
+        List<Position> out = new ArrayList<>();
+        for (Position p : positions) {
+            if (p.k() <= threshold) break;
+            out.add(p);
+        }
+        return out;
+    }
+
+    /**
+     * Columnar snapshot of the pair's positions for full revaluation. Built on first use and reused until
+     * a position of the pair changes.
+     */
+    public BorrowPositionColumns columns(String borrowAsset, String collateralAsset) {
+        String key = pairKey(borrowAsset, collateralAsset);
+        return columns.computeIfAbsent(key, k -> {
+            Set<Position> positions = byPair.get(k);
+            return BorrowPositionColumns.of(positions != null ? positions : Set.of());
+        });
+    }
+
+    public boolean contains(String contractId) {
+        return byContractId.containsKey(contractId);
+    }
+
+    public int size() {
+        return byContractId.size();
+    }
+
+    private void put(String contractId, Map<String, Object> payload) {
+        Position p = parse(contractId, payload);
+        Position previous = byContractId.put(contractId, p);
+        if (previous != null) removeFromPair(previous);
+        pairSet(p).add(p);
+        columns.remove(pairKey(p.borrowAsset(), p.collateralAsset()));
+    }
+
+    private void remove(String contractId) {
+        Position p = byContractId.remove(contractId);
+        if (p != null) removeFromPair(p);
+    }
+
+    private void removeFromPair(Position p) {
+        pairSet(p).remove(p);
+        columns.remove(pairKey(p.borrowAsset(), p.collateralAsset()));
+    }
+
+    private ConcurrentSkipListSet<Position> pairSet(Position p) {
+        return byPair.computeIfAbsent(pairKey(p.borrowAsset(), p.collateralAsset()),
+                key -> new ConcurrentSkipListSet<>(MOST_AT_RISK_FIRST));
+    }
+
+    private static String pairKey(String borrowAsset, String collateralAsset) {
+        return borrowAsset + "/" + collateralAsset;
+    }
+
+    static Position parse(String contractId, Map<String, Object> payload) {
+        double borrowAmount = parse(payload.get("borrowAmount"));
+        double collateralAmount = parse(payload.get("collateralAmount"));
+        double entryIndex = parse(payload.get("entryIndex"));
+        double liquidationThreshold = parse(payload.get("liquidationThreshold"));
+        double denominator = entryIndex * collateralAmount * liquidationThreshold;
+        double k = borrowAmount <= 0 ? 0.0 : denominator > 0 ? borrowAmount / denominator : Double.POSITIVE_INFINITY;
+        return new Position(
+                contractId,
+                String.valueOf(payload.getOrDefault("borrowAsset", "USDC")),
+                String.valueOf(payload.getOrDefault("collateralAsset", "CC")),
+                borrowAmount,
+                collateralAmount,
+                entryIndex,
+                liquidationThreshold,
+                k
+        );
+    }
+
+    private static double parse(Object value) {
+        if (value == null) return 0.0;
+        try {
+            return Double.parseDouble(String.valueOf(value));
+        } catch (NumberFormatException e) {
+            return 0.0;
+        }
+    }
+}
@@ -0,0 +1,82 @@
+package com.digitalasset.quickstart.umbra;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Typed responses of the market data endpoints (order book, trades, oracle). Serialized directly by the
+ * negotiated message converter: JSON by default, Smile ({@code application/x-jackson-smile}) or CBOR
+ * ({@code application/cbor}) for clients that ask for a binary encoding. Numbers are carried as numbers,
+ * not as the decimal strings PQS stores.
+ */
+public final class MarketData {
+
+    private MarketData() {}
+
+    /**
+     * Aggregated quantity at one price.
+     */
+    public record Level(double price, double quantity) {}
+
+    /**
+     * Price levels per side, best first. {@code bids}/{@code asks} repeat {@code buys}/{@code sells} for
+     * existing clients.
+     */
+    public record OrderBook(List<Level> buys, List<Level> sells, List<Level> bids, List<Level> asks) {
+        public OrderBook(List<Level> buys, List<Level> sells) {
+            this(buys, sells, buys, sells);
+        }
+    }
+
+    public record Trade(String id, double price, double quantity, String executedAt, String buyer, String seller) {
+
+        static Trade of(Map<String, Object> row) {
+            Map<String, Object> payload = payloadOf(row);
+            return new Trade(
+                    String.valueOf(row.get("contractId")),
+                    number(payload.get("price")),
+                    number(payload.get("quantity")),
+                    String.valueOf(payload.getOrDefault("executedAt", "")),
+                    String.valueOf(payload.getOrDefault("buyer", "")),
+                    String.valueOf(payload.getOrDefault("seller", ""))
+            );
+        }
+    }
+
+    public record OraclePrices(double ccPrice, List<OracleRow> prices) {}
+
+    public record OracleRow(String contractId, OraclePayload payload) {
+
+        static OracleRow of(Map<String, Object> row) {
+            Map<String, Object> payload = payloadOf(row);
+            Object observers = payload.get("observers");
+            return new OracleRow(
+                    String.valueOf(row.get("contractId")),
+                    new OraclePayload(
+                            String.valueOf(payload.getOrDefault("oracle", "")),
+                            observers instanceof List<?> list ? list.stream().map(String::valueOf).toList() : List.of(),
+                            String.valueOf(payload.getOrDefault("asset", "")),
+                            number(payload.get("price")),
+                            String.valueOf(payload.getOrDefault("lastUpdated", ""))
+                    )
+            );
+        }
+    }
+
+    public record OraclePayload(String oracle, List<String> observers, String asset, double price, String lastUpdated) {}
+
+    @SuppressWarnings("unchecked")
+    private static Map<String, Object> payloadOf(Map<String, Object> row) {
+        Object payload = row.get("payload");
+        return payload instanceof Map<?, ?> map ? (Map<String, Object>) map : Map.of();
+    }
+
+    private static double number(Object value) {
+        if (value == null) return 0.0;
+        try {
+            return Double.parseDouble(String.valueOf(value));
+        } catch (NumberFormatException e) {
+            return 0.0;
+        }
+    }
+}
@@ -1,6 +1,8 @@
 package com.digitalasset.quickstart.umbra;
 
 import com.daml.ledger.api.v2.ValueOuterClass;
+import com.digitalasset.quickstart.umbra.LedgerSubmissionScheduler.Lane;
+import com.digitalasset.quickstart.umbra.UmbraLedgerClient.ResultShape;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -8,6 +10,7 @@ import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Component;
 
 import java.util.*;
+import java.util.concurrent.ExecutionException;
 import java.util.stream.Collectors;
 
 import static com.digitalasset.quickstart.umbra.ProtoHelper.*;
@@ -98,26 +101,16 @@ public class MatchingEngine {
                             field("fillPrice", numericVal(midPrice)),
                             field("counterparty", partyVal(seller))
                     );
-                    ledger.exerciseChoice(
-                            buyContractId,
-                            "Umbra.DarkPool", "SpotOrder",
-                            "FillOrder",
-                            fillBuyArg,
-                            operator
-                    ).get(); // blocking - sequential matching is simpler
+                    fill(UmbraLedgerClient.commandId("fill-buy", buyContractId, sellContractId),
+                            buyContractId, fillBuyArg, operator); // blocking - sequential matching is simpler
 
                     // Fill the sell order
                     ValueOuterClass.Value fillSellArg = recordVal(
                             field("fillPrice", numericVal(midPrice)),
                             field("counterparty", partyVal(buyer))
                     );
-                    ledger.exerciseChoice(
-                            sellContractId,
-                            "Umbra.DarkPool", "SpotOrder",
-                            "FillOrder",
-                            fillSellArg,
-                            operator
-                    ).get();
+                    fill(UmbraLedgerClient.commandId("fill-sell", buyContractId, sellContractId),
+                            sellContractId, fillSellArg, operator);
 
                     logger.info("Matched: {} buys from {} at {}", buyBase, seller, midPrice);
                 } catch (Exception e) {
@@ -132,6 +125,29 @@ public class MatchingEngine {
         }
     }
 
+    /**
+     * Fill one side of a matched pair. The command id is derived from the pair, so a fill that already
+     * landed (e.g. after a timeout in an earlier cycle) is reported as a duplicate and treated as done.
+     */
+    private void fill(String commandId, String orderContractId, ValueOuterClass.Value fillArg, String operator) throws Exception {
+        try {
+            ledger.exerciseChoice(
+                    Lane.FILL,
+                    commandId,
+                    orderContractId,
+                    null,
+                    "Umbra.DarkPool", "SpotOrder",
+                    "FillOrder",
+                    fillArg,
+                    List.of(operator),
+                    ResultShape.COMPLETION
+            ).get();
+        } catch (ExecutionException e) {
+            if (!UmbraLedgerClient.isDuplicateCommand(e.getCause())) throw e;
+            logger.debug("Fill {} of order {} already applied", commandId, orderContractId);
+        }
+    }
+
     private double getPrice(Map<String, Object> order) {
         @SuppressWarnings("unchecked")
         Map<String, Object> payload = (Map<String, Object>) order.get("payload");
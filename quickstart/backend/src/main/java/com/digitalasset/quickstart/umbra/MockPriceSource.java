@@ -0,0 +1,38 @@
+package com.digitalasset.quickstart.umbra;
+
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.OptionalDouble;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * DevNet stand-in: CC/USD random walk around $0.16, bounded to +/- $0.01. Steps are small enough that
+ * most polls stay within the publishing deviation threshold.
+ */
+@Component
+public class MockPriceSource implements PriceSource {
+
+    private static final double BASE_PRICE = 0.16;
+    private static final double PRICE_VARIANCE = 0.01;
+    private static final double MAX_STEP = 0.0005;
+
+    private final Map<String, Double> last = new ConcurrentHashMap<>();
+
+    @Override
+    public String name() {
+        return "mock";
+    }
+
+    @Override
+    public OptionalDouble fetch(String asset) {
+        if (!"CC".equals(asset)) return OptionalDouble.empty();
+        double price = last.compute(asset, (a, previous) -> {
+            double current = previous == null ? BASE_PRICE : previous;
+            double next = current + ThreadLocalRandom.current().nextDouble(-MAX_STEP, MAX_STEP);
+            return Math.max(BASE_PRICE - PRICE_VARIANCE, Math.min(BASE_PRICE + PRICE_VARIANCE, next));
+        });
+        return OptionalDouble.of(Math.round(price * 10000.0) / 10000.0);
+    }
+}
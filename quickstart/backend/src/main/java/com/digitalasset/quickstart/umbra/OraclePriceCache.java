@@ -0,0 +1,148 @@
+package com.digitalasset.quickstart.umbra;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+
+import static com.digitalasset.quickstart.umbra.UmbraConfig.ORACLE_PRICE_TEMPLATE;
+
+/**
+ * Latest OraclePrice per asset (price, contract id, lastUpdated). Kept current from projection events;
+ * when the projection is off it is refreshed from PQS with one query for all assets, periodically and
+ * after our own price updates.
+ */
+@Component
+public class OraclePriceCache implements UmbraContractProjection.Listener {
+
+    private static final Logger logger = LoggerFactory.getLogger(OraclePriceCache.class);
+    private static final long MISS_REFRESH_INTERVAL_MS = 1_000;
+
+    /**
+     * An asset's current oracle contract.
+     */
+    public record Quote(String asset, double price, String contractId, String lastUpdated) {}
+
+    private final UmbraRepository repo;
+    private final UmbraContractProjection projection;
+    private final Map<String, Quote> byAsset = new ConcurrentHashMap<>();
+    private final List<Consumer<Quote>> quoteListeners = new CopyOnWriteArrayList<>();
+    // Touched only from the projection's event thread
+    private final Set<String> archivedInTransaction = new HashSet<>();
+    private volatile long lastRefreshMillis = 0;
+
+    @Autowired
+    public OraclePriceCache(UmbraRepository repo, UmbraContractProjection projection) {
+        this.repo = repo;
+        this.projection = projection;
+        projection.addListener(this);
+    }
+
+    /**
+     * Called with every new oracle contract the cache sees, from projection events or PQS refreshes.
+     */
+    public void addQuoteListener(Consumer<Quote> listener) {
+        quoteListeners.add(listener);
+    }
+
+    @Override
+    public void onCreated(String template, String contractId, Map<String, Object> payload) {
+        if (ORACLE_PRICE_TEMPLATE.equals(template)) put(contractId, payload);
+    }
+
+    @Override
+    public void onArchived(String template, String contractId) {
+        // UpdatePrice archives and re-creates in one transaction; keep the quote until the transaction is through
+        if (ORACLE_PRICE_TEMPLATE.equals(template)) archivedInTransaction.add(contractId);
+    }
+
+    @Override
+    public void onTransactionApplied() {
+        if (archivedInTransaction.isEmpty()) return;
+        // Only quotes that weren't replaced by a create in the same transaction are really gone
+        byAsset.values().removeIf(quote -> archivedInTransaction.contains(quote.contractId()));
+        archivedInTransaction.clear();
+    }
+
+    @Override
+    public void onReset() {
+        archivedInTransaction.clear();
+        byAsset.clear();
+    }
+
+    /**
+     * Current quote for {@code asset}. Without the projection, a miss triggers a PQS refresh at most
+     * once per second.
+     */
+    public Optional<Quote> get(String asset) {
+        Quote quote = byAsset.get(asset);
+        if (quote == null && !projection.isLive()
+                && System.currentTimeMillis() - lastRefreshMillis >= MISS_REFRESH_INTERVAL_MS) {
+            refresh();
+            quote = byAsset.get(asset);
+        }
+        return Optional.ofNullable(quote);
+    }
+
+    public Map<String, Quote> all() {
+        if (byAsset.isEmpty() && !projection.isLive()) refresh();
+        return Map.copyOf(byAsset);
+    }
+
+    @Scheduled(fixedRate = 5_000)
+    public void refreshIfNotLive() {
+        if (!projection.isLive()) refresh();
+    }
+
+    /**
+     * Replace the cache with the oracle contracts currently in PQS.
+     */
+    public void refresh() {
+        lastRefreshMillis = System.currentTimeMillis();
+        try {
+            Map<String, Quote> fresh = new HashMap<>();
+            for (Map<String, Object> row : repo.getAllOraclePrices()) {
+                @SuppressWarnings("unchecked")
+                Map<String, Object> payload = (Map<String, Object>) row.get("payload");
+                Quote quote = quote((String) row.get("contractId"), payload);
+                fresh.put(quote.asset(), quote);
+            }
+            fresh.values().forEach(this::put);
+            byAsset.keySet().retainAll(fresh.keySet());
+        } catch (Exception e) {
+            logger.debug("Oracle price refresh failed", e);
+        }
+    }
+
+    private void put(String contractId, Map<String, Object> payload) {
+        put(quote(contractId, payload));
+    }
+
+    private void put(Quote quote) {
+        Quote previous = byAsset.put(quote.asset(), quote);
+        if (previous == null || !previous.contractId().equals(quote.contractId())) {
+            quoteListeners.forEach(listener -> listener.accept(quote));
+        }
+    }
+
+    private static Quote quote(String contractId, Map<String, Object> payload) {
+        double price;
+        try {
+            price = Double.parseDouble(String.valueOf(payload.get("price")));
+        } catch (NumberFormatException e) {
+            price = 0.0;
+        }
+        return new Quote(
+                String.valueOf(payload.get("asset")),
+                price,
+                contractId,
+                String.valueOf(payload.getOrDefault("lastUpdated", ""))
+        );
+    }
+}
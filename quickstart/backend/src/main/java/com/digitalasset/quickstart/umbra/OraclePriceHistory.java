@@ -0,0 +1,166 @@
+package com.digitalasset.quickstart.umbra;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Per-asset oracle price history in fixed-size ring buffers of primitive (timestamp, price) samples, fed
+ * with every new OraclePrice contract seen by {@link OraclePriceCache}. Appends are O(1); window queries
+ * binary-search the window start and scan only the samples inside it.
+ */
+@Component
+public class OraclePriceHistory {
+
+    private static final double SECONDS_PER_YEAR = 31_536_000.0;
+
+    /**
+     * Statistics over {@code [from, to]}. The price in effect at {@code from} (last sample before it)
+     * counts for TWAP and min/max. If the history starts inside the window, TWAP and volatility are taken
+     * over the covered part only. Volatility is annualized from the realized variance of log returns.
+     */
+    public record WindowStats(
+            String asset,
+            long fromMillis,
+            long toMillis,
+            int samples,
+            double twap,
+            double min,
+            double max,
+            double last,
+            double realizedVolatility
+    ) {}
+
+    private final int capacity;
+    private final Map<String, Ring> rings = new ConcurrentHashMap<>();
+
+    @Autowired
+    public OraclePriceHistory(OraclePriceCache oracleCache, UmbraConfig config) {
+        this(config.getOracleFeed().getHistorySize());
+        oracleCache.addQuoteListener(this::record);
+    }
+
+    OraclePriceHistory(int capacity) {
+        this.capacity = Math.max(2, capacity);
+    }
+
+    void record(OraclePriceCache.Quote quote) {
+        long timestamp;
+        try {
+            timestamp = Instant.parse(quote.lastUpdated()).toEpochMilli();
+        } catch (DateTimeParseException e) {
+            timestamp = System.currentTimeMillis();
+        }
+        rings.computeIfAbsent(quote.asset(), a -> new Ring(capacity)).append(timestamp, quote.price());
+    }
+
+    public Set<String> assets() {
+        return rings.keySet();
+    }
+
+    public Optional<WindowStats> stats(String asset, long fromMillis, long toMillis) {
+        Ring ring = rings.get(asset);
+        return ring == null ? Optional.empty() : ring.stats(asset, fromMillis, toMillis);
+    }
+
+    /**
+     * Raw samples in {@code [from, to]}, oldest first, as {@code [epochMillis, price]} pairs.
+     */
+    public List<double[]> samples(String asset, long fromMillis, long toMillis) {
+        Ring ring = rings.get(asset);
+        return ring == null ? List.of() : ring.samples(fromMillis, toMillis);
+    }
+
+    private static final class Ring {
+        private final long[] timestamps;
+        private final double[] prices;
+        private int start = 0;
+        private int size = 0;
+
+        Ring(int capacity) {
+            this.timestamps = new long[capacity];
+            this.prices = new double[capacity];
+        }
+
+        synchronized void append(long timestamp, double price) {
+            // Replays after a projection reconnect or PQS refresh arrive with timestamps we already have
+            if (size > 0 && timestamp <= timestamps[physical(size - 1)]) return;
+            if (size < timestamps.length) {
+                int slot = physical(size);
+                timestamps[slot] = timestamp;
+                prices[slot] = price;
+                size++;
+            } else {
+                timestamps[start] = timestamp;
+                prices[start] = price;
+                start = (start + 1) % timestamps.length;
+            }
+        }
+
+        synchronized Optional<WindowStats> stats(String asset, long from, long to) {
+            if (size == 0 || to < from) return Optional.empty();
+            int first = firstAtOrAfter(from);
+            // Price in effect at the window start, if any sample precedes it
+            int i = first > 0 ? first - 1 : first;
+            if (i >= size || timestamps[physical(i)] > to) return Optional.empty();
+            // Before the oldest sample there is no price; average only over the part of the window we cover
+            long coveredFrom = Math.max(from, timestamps[physical(i)]);
+
+            double min = Double.POSITIVE_INFINITY, max = Double.NEGATIVE_INFINITY;
+            double weighted = 0.0, sumSquaredReturns = 0.0, previousPrice = Double.NaN, last = 0.0;
+            int samples = 0;
+            for (; i < size; i++) {
+                int p = physical(i);
+                long t = timestamps[p];
+                if (t > to) break;
+                double price = prices[p];
+                long segmentStart = Math.max(t, from);
+                long segmentEnd = i + 1 < size ? Math.min(timestamps[physical(i + 1)], to) : to;
+                weighted += price * Math.max(0, segmentEnd - segmentStart);
+                min = Math.min(min, price);
+                max = Math.max(max, price);
+                if (t >= from) {
+                    samples++;
+                    if (!Double.isNaN(previousPrice) && previousPrice > 0 && price > 0) {
+                        double r = Math.log(price / previousPrice);
+                        sumSquaredReturns += r * r;
+                    }
+                }
+                previousPrice = price;
+                last = price;
+            }
+            long span = to - coveredFrom;
+            double twap = span > 0 ? weighted / span : last;
+            double volatility = span > 0 ? Math.sqrt(sumSquaredReturns / (span / 1000.0) * SECONDS_PER_YEAR) : 0.0;
+            return Optional.of(new WindowStats(asset, from, to, samples, twap, min, max, last, volatility));
+        }
+
+        synchronized List<double[]> samples(long from, long to) {
+            List<double[]> out = new ArrayList<>();
+            for (int i = firstAtOrAfter(from); i < size; i++) {
+                int p = physical(i);
+                if (timestamps[p] > to) break;
+                out.add(new double[]{timestamps[p], prices[p]});
+            }
+            return out;
+        }
+
+        private int firstAtOrAfter(long timestamp) {
+            int lo = 0, hi = size;
+            while (lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                if (timestamps[physical(mid)] < timestamp) lo = mid + 1;
+                else hi = mid;
+            }
+            return lo;
+        }
+
+        private int physical(int logical) {
+            return (start + logical) % timestamps.length;
+        }
+    }
+}
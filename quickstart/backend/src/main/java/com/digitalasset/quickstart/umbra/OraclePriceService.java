@@ -1,71 +1,220 @@
 package com.digitalasset.quickstart.umbra;
 
-import com.daml.ledger.api.v2.ValueOuterClass;
+import com.digitalasset.quickstart.umbra.LedgerSubmissionScheduler.Lane;
+import com.digitalasset.quickstart.umbra.UmbraLedgerClient.ResultShape;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Component;
 
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
 import java.util.*;
-import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
 
 import static com.digitalasset.quickstart.umbra.ProtoHelper.*;
 
 /**
- * Oracle price service. Updates CC/USD price every 5 minutes.
- * For DevNet MVP: mock price fluctuating around $0.16 +/- $0.01.
+ * Oracle feed pipeline. Polls the enabled {@link PriceSource}s for each configured asset, takes the median,
+ * and publishes UpdatePrice only when it deviates from the on-ledger price by more than the configured
+ * threshold or the heartbeat interval has passed since the last update. All assets due in a tick are
+ * updated in a single multi-command transaction. Sources are polled on the task executor under one deadline,
+ * so a slow source cannot hold the (shared) scheduler thread.
+ * For DevNet MVP the default source is {@link MockPriceSource}, a walk around $0.16 +/- $0.01.
  */
 @Component
 public class OraclePriceService {
 
     private static final Logger logger = LoggerFactory.getLogger(OraclePriceService.class);
-    private static final double BASE_PRICE = 0.16;
-    private static final double PRICE_VARIANCE = 0.01;
 
     private final UmbraRepository repo;
     private final UmbraLedgerClient ledger;
     private final UmbraConfig config;
+    private final LiquidationMonitor liquidationMonitor;
+    private final OraclePriceCache oracleCache;
+    private final UmbraContractProjection projection;
+    private final Executor taskExecutor;
+    private final Map<String, PriceSource> sources = new LinkedHashMap<>();
+    private final Set<String> publishing = ConcurrentHashMap.newKeySet();
 
     @Autowired
-    public OraclePriceService(UmbraRepository repo, UmbraLedgerClient ledger, UmbraConfig config) {
+    public OraclePriceService(
+            UmbraRepository repo,
+            UmbraLedgerClient ledger,
+            UmbraConfig config,
+            LiquidationMonitor liquidationMonitor,
+            OraclePriceCache oracleCache,
+            UmbraContractProjection projection,
+            List<PriceSource> availableSources,
+            @Qualifier("applicationTaskExecutor") Executor taskExecutor
+    ) {
         this.repo = repo;
         this.ledger = ledger;
         this.config = config;
+        this.liquidationMonitor = liquidationMonitor;
+        this.oracleCache = oracleCache;
+        this.projection = projection;
+        this.taskExecutor = taskExecutor;
+        for (PriceSource source : availableSources) {
+            if (config.getOracleFeed().getSources().contains(source.name())) sources.put(source.name(), source);
+        }
+        logger.info("Oracle feed sources: {}", sources.keySet());
     }
 
-    @Scheduled(fixedRate = 300_000) // 5 minutes
-    public void updatePrice() {
+    @Scheduled(fixedRateString = "${umbra.oracle-feed.poll-interval-ms:5000}")
+    public void updatePrices() {
         String oracleParty = config.getOracleParty();
         if (oracleParty.isEmpty()) return;
 
-        try {
-            Optional<Map<String, Object>> ccOracle = repo.getOraclePrice("CC");
-            if (ccOracle.isEmpty()) {
-                logger.debug("No CC oracle price contract found, skipping update");
-                return;
+        List<String> due = config.getOracleFeed().getAssets().stream().filter(asset -> !publishing.contains(asset)).toList();
+        Map<String, OptionalDouble> medians = fetchMedians(due);
+        List<PriceUpdate> updates = new ArrayList<>();
+        for (String asset : due) {
+            try {
+                pendingUpdate(asset, medians.get(asset)).ifPresent(updates::add);
+            } catch (Exception e) {
+                logger.debug("Oracle price check error for {} (may be normal if no contracts exist)", asset, e);
             }
+        }
+        if (updates.isEmpty()) return;
+        updates.removeIf(update -> !publishing.add(update.asset()));
+        if (!updates.isEmpty()) publish(oracleParty, updates);
+    }
 
-            String contractId = (String) ccOracle.get().get("contractId");
-            final double newPrice = Math.round((BASE_PRICE + ThreadLocalRandom.current().nextDouble(-PRICE_VARIANCE, PRICE_VARIANCE)) * 10000.0) / 10000.0;
-
-            ValueOuterClass.Value choiceArg = recordVal(
-                    field("newPrice", numericVal(newPrice))
-            );
+    /**
+     * A price that passed the deviation/heartbeat check, to be written to its OraclePrice contract.
+     */
+    private record PriceUpdate(String asset, String contractId, BigDecimal newPrice, double deviationBps, boolean heartbeat) {
 
-            ledger.exerciseChoice(
+        UmbraLedgerClient.Exercise exercise(String contractId) {
+            return new UmbraLedgerClient.Exercise(
                     contractId,
                     "Umbra.Oracle", "OraclePrice",
                     "UpdatePrice",
-                    choiceArg,
-                    oracleParty
-            ).thenAccept(tx -> logger.info("Updated CC price to {} (tx: {})", newPrice, tx.getUpdateId()))
-             .exceptionally(e -> {
-                 logger.error("Failed to update oracle price", e);
-                 return null;
-             });
-        } catch (Exception e) {
-            logger.debug("Oracle price update error (may be normal if no contracts exist)", e);
+                    recordVal(field("newPrice", numericVal(newPrice.toPlainString())))
+            );
+        }
+    }
+
+    private Optional<PriceUpdate> pendingUpdate(String asset, OptionalDouble aggregated) {
+        Optional<OraclePriceCache.Quote> oracle = oracleCache.get(asset);
+        if (oracle.isEmpty()) {
+            logger.debug("No {} oracle price contract found, skipping update", asset);
+            return Optional.empty();
+        }
+        if (aggregated.isEmpty()) {
+            logger.debug("No source has a price for {}, skipping update", asset);
+            return Optional.empty();
+        }
+
+        UmbraConfig.OracleFeed cfg = config.getOracleFeed();
+        BigDecimal newPrice = BigDecimal.valueOf(aggregated.getAsDouble()).setScale(10, RoundingMode.HALF_EVEN);
+        double current = oracle.get().price();
+        double deviationBps = current <= 0 ? Double.POSITIVE_INFINITY
+                : Math.abs(newPrice.doubleValue() / current - 1.0) * 10_000.0;
+        boolean heartbeatDue = lastUpdated(oracle.get())
+                .map(at -> Duration.between(at, Instant.now()).toMillis() >= cfg.getHeartbeatMs())
+                .orElse(true);
+        if (deviationBps < cfg.getDeviationThresholdBps() && !heartbeatDue) return Optional.empty();
+        return Optional.of(new PriceUpdate(asset, oracle.get().contractId(), newPrice, deviationBps, heartbeatDue));
+    }
+
+    /**
+     * Write all updates of this tick in one transaction, so every asset moves at the same ledger time.
+     * If the batch is rejected for a reason other than contention, each asset is retried on its own so
+     * one bad price cannot hold back the others.
+     */
+    private void publish(String oracleParty, List<PriceUpdate> updates) {
+        String[] contractIds = updates.stream().map(PriceUpdate::contractId).toArray(String[]::new);
+        ledger.exerciseChoices(
+                Lane.MAINTENANCE,
+                UmbraLedgerClient.commandId("update-price", contractIds),
+                updates.stream().map(update -> update.exercise(update.contractId())).toList(),
+                () -> resolve(updates),
+                List.of(oracleParty),
+                ResultShape.COMPLETION
+        ).whenComplete((tx, e) -> {
+            if (e == null) {
+                updates.forEach(update -> published(update, tx.updateId()));
+                publishing.removeAll(updates.stream().map(PriceUpdate::asset).toList());
+                afterPublish();
+            } else if (updates.size() > 1 && !UmbraLedgerClient.isContentionError(e) && !UmbraLedgerClient.isDuplicateCommand(e)) {
+                logger.warn("Batch oracle update of {} assets failed, publishing individually", updates.size(), e);
+                updates.forEach(update -> publish(oracleParty, List.of(update)));
+            } else {
+                updates.forEach(update -> logger.error("Failed to update {} oracle price", update.asset(), e));
+                publishing.removeAll(updates.stream().map(PriceUpdate::asset).toList());
+            }
+        });
+    }
+
+    private Optional<List<UmbraLedgerClient.Exercise>> resolve(List<PriceUpdate> updates) {
+        List<UmbraLedgerClient.Exercise> exercises = new ArrayList<>();
+        for (PriceUpdate update : updates) {
+            Optional<String> contractId = repo.getOraclePrice(update.asset()).map(row -> (String) row.get("contractId"));
+            if (contractId.isEmpty()) return Optional.empty();
+            exercises.add(update.exercise(contractId.get()));
+        }
+        return Optional.of(exercises);
+    }
+
+    private void published(PriceUpdate update, String updateId) {
+        logger.info("Updated {} price to {} ({} bps{}) (tx: {})", update.asset(), update.newPrice().stripTrailingZeros().toPlainString(),
+                String.format("%.1f", update.deviationBps()), update.heartbeat() ? ", heartbeat" : "", updateId);
+    }
+
+    private void afterPublish() {
+        if (!projection.isLive()) oracleCache.refresh();
+        liquidationMonitor.requestSweep();
+    }
+
+    /**
+     * Query every source for every asset concurrently and wait at most one source timeout (plus a small
+     * margin) in total; a source that has not answered by then, or that failed, counts as having no price.
+     */
+    private Map<String, OptionalDouble> fetchMedians(List<String> assets) {
+        long deadlineMs = config.getOracleFeed().getSourceTimeoutMs() + 250;
+        Map<String, List<CompletableFuture<OptionalDouble>>> fetches = new LinkedHashMap<>();
+        for (String asset : assets) {
+            fetches.put(asset, sources.values().stream()
+                    .map(source -> CompletableFuture.supplyAsync(() -> source.fetch(asset), taskExecutor)
+                            .exceptionally(e -> {
+                                logger.debug("Price source {} failed for {}", source.name(), asset, e);
+                                return OptionalDouble.empty();
+                            })
+                            .completeOnTimeout(OptionalDouble.empty(), deadlineMs, TimeUnit.MILLISECONDS))
+                    .toList());
+        }
+        Map<String, OptionalDouble> medians = new HashMap<>();
+        fetches.forEach((asset, pending) -> medians.put(asset, median(pending.stream().map(CompletableFuture::join).toList())));
+        return medians;
+    }
+
+    private static OptionalDouble median(List<OptionalDouble> quotes) {
+        double[] prices = quotes.stream()
+                .filter(OptionalDouble::isPresent)
+                .mapToDouble(OptionalDouble::getAsDouble)
+                .filter(price -> price > 0)
+                .sorted()
+                .toArray();
+        if (prices.length == 0) return OptionalDouble.empty();
+        int mid = prices.length / 2;
+        return OptionalDouble.of(prices.length % 2 == 1 ? prices[mid] : (prices[mid - 1] + prices[mid]) / 2.0);
+    }
+
+    private static Optional<Instant> lastUpdated(OraclePriceCache.Quote quote) {
+        try {
+            return Optional.of(Instant.parse(quote.lastUpdated()));
+        } catch (DateTimeParseException e) {
+            return Optional.empty();
         }
     }
 }
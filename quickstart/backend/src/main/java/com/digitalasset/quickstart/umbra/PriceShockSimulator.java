@@ -0,0 +1,129 @@
+package com.digitalasset.quickstart.umbra;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.*;
+
+/**
+ * What-if liquidation analysis: revalues every BorrowPosition under a set of price shocks to one asset.
+ * A snapshot (per-pair columns, LendingPool index projected to now, oracle prices) is taken once per request; scenarios
+ * then run in parallel purely in memory, using the same health-factor math as {@link LiquidationMonitor}.
+ */
+@Component
+public class PriceShockSimulator {
+
+    private final UmbraRepository repo;
+    private final UmbraContractProjection projection;
+    private final LiquidationPriceIndex index;
+    private final OraclePriceCache oracleCache;
+    private final InterestIndexProjector interestIndex;
+
+    private record PairSnapshot(String borrowAsset, String collateralAsset, BorrowPositionColumns columns) {}
+
+    private record Snapshot(double accIndex, Map<String, Double> prices, List<PairSnapshot> pairs) {}
+
+    @Autowired
+    public PriceShockSimulator(
+            UmbraRepository repo,
+            UmbraContractProjection projection,
+            LiquidationPriceIndex index,
+            OraclePriceCache oracleCache,
+            InterestIndexProjector interestIndex
+    ) {
+        this.repo = repo;
+        this.projection = projection;
+        this.index = index;
+        this.oracleCache = oracleCache;
+        this.interestIndex = interestIndex;
+    }
+
+    /**
+     * Evaluate each shock (a relative move, e.g. -0.2 for a 20% drop) applied to {@code asset}'s oracle price.
+     * Per scenario: number of liquidatable positions, their debt and collateral value, and the {@code topN}
+     * positions with the lowest health factor.
+     */
+    public Map<String, Object> simulate(String asset, List<Double> shocks, int topN) {
+        Snapshot snapshot = snapshot();
+        if (!snapshot.prices().containsKey(asset)) {
+            throw new NoSuchElementException("No oracle price for " + asset);
+        }
+        List<Map<String, Object>> scenarios = shocks.parallelStream()
+                .map(shock -> scenario(snapshot, asset, shock, topN))
+                .toList();
+        int positions = snapshot.pairs().stream().mapToInt(p -> p.columns().size()).sum();
+        return Map.<String, Object>of(
+                "asset", asset,
+                "price", snapshot.prices().get(asset),
+                "accumulatedIndex", snapshot.accIndex(),
+                "positions", positions,
+                "scenarios", scenarios
+        );
+    }
+
+    private Snapshot snapshot() {
+        if (!projection.isLive()) index.reconcile(repo.getAllBorrowPositions());
+        double accIndex = interestIndex.now()
+                .map(InterestIndexProjector.ProjectedPool::index)
+                .orElseThrow(() -> new NoSuchElementException("LendingPool not found"));
+
+        Map<String, Double> prices = new HashMap<>();
+        oracleCache.all().forEach((asset, quote) -> prices.put(asset, quote.price()));
+
+        List<PairSnapshot> pairs = new ArrayList<>();
+        for (String[] pair : index.pairs()) {
+            pairs.add(new PairSnapshot(pair[0], pair[1], index.columns(pair[0], pair[1])));
+        }
+        return new Snapshot(accIndex, prices, pairs);
+    }
+
+    private Map<String, Object> scenario(Snapshot snapshot, String asset, double shock, int topN) {
+        int count = 0;
+        double debtAtRisk = 0.0;
+        double collateralAtRisk = 0.0;
+        // Highest health factor at the head, so the heap keeps the topN lowest
+        PriorityQueue<Map<String, Object>> worst = new PriorityQueue<>(
+                Comparator.comparingDouble((Map<String, Object> m) -> (double) m.get("healthFactor")).reversed());
+
+        for (PairSnapshot pair : snapshot.pairs()) {
+            Double borrowPrice = snapshot.prices().get(pair.borrowAsset());
+            Double collateralPrice = snapshot.prices().get(pair.collateralAsset());
+            if (borrowPrice == null || collateralPrice == null) continue;
+            if (pair.borrowAsset().equals(asset)) borrowPrice *= 1 + shock;
+            if (pair.collateralAsset().equals(asset)) collateralPrice *= 1 + shock;
+
+            BorrowPositionColumns columns = pair.columns();
+            double[] hf = new double[columns.size()];
+            columns.healthFactors(snapshot.accIndex(), borrowPrice, collateralPrice, hf);
+            for (int i = 0; i < hf.length; i++) {
+                if (hf[i] >= 1.0) continue;
+                LiquidationPriceIndex.Position p = columns.position(i);
+                double debtValue = p.borrowAmount() * (snapshot.accIndex() / p.entryIndex()) * borrowPrice;
+                double collateralValue = p.collateralAmount() * collateralPrice;
+                count++;
+                debtAtRisk += debtValue;
+                collateralAtRisk += collateralValue;
+                if (topN > 0 && (worst.size() < topN || hf[i] < (double) worst.peek().get("healthFactor"))) {
+                    worst.add(Map.<String, Object>of(
+                            "contractId", p.contractId(),
+                            "healthFactor", hf[i],
+                            "debtValue", debtValue,
+                            "collateralValue", collateralValue
+                    ));
+                    if (worst.size() > topN) worst.poll();
+                }
+            }
+        }
+
+        List<Map<String, Object>> top = new ArrayList<>(worst);
+        top.sort(Comparator.comparingDouble(m -> (double) m.get("healthFactor")));
+        return Map.<String, Object>of(
+                "shock", shock,
+                "price", snapshot.prices().get(asset) * (1 + shock),
+                "liquidatable", count,
+                "debtAtRisk", debtAtRisk,
+                "collateralAtRisk", collateralAtRisk,
+                "positions", top
+        );
+    }
+}
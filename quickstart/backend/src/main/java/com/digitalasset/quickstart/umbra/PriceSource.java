@@ -0,0 +1,17 @@
+package com.digitalasset.quickstart.umbra;
+
+import java.util.OptionalDouble;
+
+/**
+ * A price feed for the oracle pipeline. Enabled sources are listed by {@link #name()} in
+ * {@code umbra.oracle-feed.sources}; {@link OraclePriceService} takes the median across them.
+ */
+public interface PriceSource {
+
+    String name();
+
+    /**
+     * Current USD price of {@code asset}, or empty if this source has none right now.
+     */
+    OptionalDouble fetch(String asset);
+}
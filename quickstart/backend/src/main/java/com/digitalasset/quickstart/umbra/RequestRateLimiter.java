@@ -0,0 +1,117 @@
+package com.digitalasset.quickstart.umbra;
+
+import com.digitalasset.quickstart.security.AuthenticatedPartyProvider;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.web.method.HandlerMethod;
+import org.springframework.web.servlet.HandlerInterceptor;
+import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throttles {@link UmbraController} requests per party and endpoint class. The party is the authenticated
+ * one, or the client address for anonymous reads (behind a proxy, set {@code server.forward-headers-strategy}
+ * so this is the real client). The operator party is exempt by default. A request over its class limit is answered with
+ * {@code 429} and a {@code Retry-After} of the seconds until the bucket has a token again, before it
+ * reaches PQS or the ledger. Rejections are counted as {@code umbra.http.throttled}.
+ */
+@Component
+public class RequestRateLimiter implements HandlerInterceptor, WebMvcConfigurer {
+
+    /**
+     * Endpoint classes with separate limits.
+     */
+    enum EndpointClass {
+        /** Market data, positions and pool reads. */
+        READ,
+        /** Order and pool writes that reach the ledger. */
+        WRITE,
+        /** Risk simulations over the whole position book. */
+        RISK
+    }
+
+    private final AuthenticatedPartyProvider authenticatedPartyProvider;
+    private final boolean enabled;
+    private final String exemptParty;
+    private final Map<EndpointClass, TokenBuckets> buckets = new EnumMap<>(EndpointClass.class);
+    private final Map<EndpointClass, Counter> throttled = new EnumMap<>(EndpointClass.class);
+
+    @Autowired
+    public RequestRateLimiter(
+            UmbraConfig config,
+            AuthenticatedPartyProvider authenticatedPartyProvider,
+            MeterRegistry meterRegistry
+    ) {
+        this.authenticatedPartyProvider = authenticatedPartyProvider;
+        UmbraConfig.RateLimit cfg = config.getRateLimit();
+        this.enabled = cfg.isEnabled();
+        this.exemptParty = cfg.isOperatorExempt() ? config.getOperatorParty() : null;
+        addClass(EndpointClass.READ, cfg.getReadPerSecond(), cfg.getReadBurst(), meterRegistry);
+        addClass(EndpointClass.WRITE, cfg.getWritePerSecond(), cfg.getWriteBurst(), meterRegistry);
+        addClass(EndpointClass.RISK, cfg.getRiskPerSecond(), cfg.getRiskBurst(), meterRegistry);
+        Gauge.builder("umbra.http.rate.buckets", buckets, b -> b.values().stream().mapToInt(TokenBuckets::size).sum())
+                .description("Token buckets currently held by the rate limiter")
+                .register(meterRegistry);
+    }
+
+    @Scheduled(fixedDelayString = "${umbra.rate-limit.idle-eviction-ms:60000}")
+    public void evictIdle() {
+        buckets.values().forEach(TokenBuckets::evictIdle);
+    }
+
+    @Override
+    public void addInterceptors(InterceptorRegistry registry) {
+        if (enabled) registry.addInterceptor(this);
+    }
+
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) throws Exception {
+        if (!(handler instanceof HandlerMethod method) || method.getBeanType() != UmbraController.class) {
+            return true;
+        }
+        EndpointClass endpointClass = classify(request);
+        TokenBuckets classBuckets = buckets.get(endpointClass);
+        if (classBuckets == null) return true;
+
+        String party = authenticatedPartyProvider.getParty().orElseGet(request::getRemoteAddr);
+        if (party.equals(exemptParty)) return true;
+        long waitNanos = classBuckets.tryAcquire(party);
+        if (waitNanos == 0) return true;
+
+        throttled.get(endpointClass).increment();
+        long retryAfterSeconds = Math.max(1, (waitNanos + TimeUnit.SECONDS.toNanos(1) - 1) / TimeUnit.SECONDS.toNanos(1));
+        response.setStatus(429);
+        response.setHeader(HttpHeaders.RETRY_AFTER, Long.toString(retryAfterSeconds));
+        response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+        response.getWriter().write("{\"error\":\"Rate limit exceeded\"}");
+        return false;
+    }
+
+    static EndpointClass classify(HttpServletRequest request) {
+        String path = request.getRequestURI().substring(request.getContextPath().length());
+        if (path.startsWith("/risk/")) return EndpointClass.RISK;
+        String method = request.getMethod();
+        return "GET".equals(method) || "HEAD".equals(method) ? EndpointClass.READ : EndpointClass.WRITE;
+    }
+
+    private void addClass(EndpointClass endpointClass, double ratePerSecond, int burst, MeterRegistry meterRegistry) {
+        if (ratePerSecond > 0) buckets.put(endpointClass, new TokenBuckets(ratePerSecond, burst));
+        throttled.put(endpointClass, Counter.builder("umbra.http.throttled")
+                .description("Umbra API requests rejected by the rate limiter")
+                .tag("class", endpointClass.name().toLowerCase(Locale.ROOT))
+                .register(meterRegistry));
+    }
+}
@@ -0,0 +1,56 @@
+package com.digitalasset.quickstart.umbra;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Coalesces concurrent loads of the same key: the first caller runs the loader, callers arriving while
+ * it runs wait for and share its result or exception. With a TTL the result keeps being served for that
+ * long after it completed; without one the next caller loads again. Shared results must not be mutated.
+ */
+class SingleFlight<K> {
+
+    private final Map<K, CompletableFuture<Object>> flights = new ConcurrentHashMap<>();
+    private final long ttlMillis;
+
+    SingleFlight(long ttlMillis) {
+        this.ttlMillis = ttlMillis;
+    }
+
+    @SuppressWarnings("unchecked")
+    <V> V get(K key, Supplier<V> loader) {
+        CompletableFuture<Object> flight = new CompletableFuture<>();
+        CompletableFuture<Object> existing = flights.putIfAbsent(key, flight);
+        if (existing != null) return (V) await(existing);
+
+        try {
+            V value = loader.get();
+            flight.complete(value);
+            return value;
+        } catch (Throwable t) {
+            // Errors and sneaky checked exceptions too, or waiters would block on this flight forever
+            flight.completeExceptionally(t);
+            throw t;
+        } finally {
+            if (ttlMillis > 0 && !flight.isCompletedExceptionally()) {
+                CompletableFuture.delayedExecutor(ttlMillis, TimeUnit.MILLISECONDS).execute(() -> flights.remove(key, flight));
+            } else {
+                flights.remove(key, flight);
+            }
+        }
+    }
+
+    private static Object await(CompletableFuture<Object> flight) {
+        try {
+            return flight.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) throw cause;
+            if (e.getCause() instanceof Error cause) throw cause;
+            throw e;
+        }
+    }
+}
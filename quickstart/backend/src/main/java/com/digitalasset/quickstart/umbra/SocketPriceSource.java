@@ -0,0 +1,55 @@
+package com.digitalasset.quickstart.umbra;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.io.*;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.OptionalDouble;
+
+/**
+ * Line-based TCP price feed at {@code umbra.oracle-feed.socket-host}/{@code socket-port}: sends the asset
+ * symbol followed by a newline and reads the price from the first line of the reply. Meant as a stand-in
+ * for an external feed in tests and local setups.
+ */
+@Component
+public class SocketPriceSource implements PriceSource {
+
+    private static final Logger logger = LoggerFactory.getLogger(SocketPriceSource.class);
+
+    private final UmbraConfig config;
+
+    @Autowired
+    public SocketPriceSource(UmbraConfig config) {
+        this.config = config;
+    }
+
+    @Override
+    public String name() {
+        return "socket";
+    }
+
+    @Override
+    public OptionalDouble fetch(String asset) {
+        UmbraConfig.OracleFeed cfg = config.getOracleFeed();
+        if (cfg.getSocketHost().isBlank() || cfg.getSocketPort() <= 0) return OptionalDouble.empty();
+        int timeoutMs = (int) cfg.getSourceTimeoutMs();
+        try (Socket socket = new Socket()) {
+            socket.connect(new InetSocketAddress(cfg.getSocketHost(), cfg.getSocketPort()), timeoutMs);
+            socket.setSoTimeout(timeoutMs);
+            Writer out = new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8);
+            out.write(asset + "\n");
+            out.flush();
+            BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+            String line = in.readLine();
+            return line == null || line.isBlank() ? OptionalDouble.empty() : OptionalDouble.of(Double.parseDouble(line.trim()));
+        } catch (IOException | NumberFormatException e) {
+            logger.debug("Socket price source could not read {}", asset, e);
+            return OptionalDouble.empty();
+        }
+    }
+}
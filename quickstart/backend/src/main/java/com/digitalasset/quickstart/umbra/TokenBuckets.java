@@ -0,0 +1,57 @@
+package com.digitalasset.quickstart.umbra;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * One token bucket per key. Each bucket is a single theoretical arrival time (the instant it would be
+ * full again minus one token per admitted request, as in GCRA), updated with a CAS, so admission never
+ * blocks; the map only locks its own bins when a key is first seen or evicted. Buckets that have refilled
+ * completely carry no state and are dropped by {@link #evictIdle()}.
+ */
+class TokenBuckets {
+
+    private final Map<String, AtomicLong> arrivals = new ConcurrentHashMap<>();
+    private final long intervalNanos;
+    private final long burstNanos;
+    private final long origin = System.nanoTime();
+
+    TokenBuckets(double ratePerSecond, int burst) {
+        this.intervalNanos = (long) (1_000_000_000L / ratePerSecond);
+        this.burstNanos = intervalNanos * Math.max(1, burst);
+    }
+
+    /**
+     * Take a token from the key's bucket. Returns 0 if one was available, otherwise the nanoseconds until
+     * one will be.
+     */
+    long tryAcquire(String key) {
+        AtomicLong bucket = arrivals.get(key);
+        if (bucket == null) bucket = arrivals.computeIfAbsent(key, k -> new AtomicLong());
+        long now = now();
+        while (true) {
+            long arrival = bucket.get();
+            long next = Math.max(arrival, now) + intervalNanos;
+            long wait = next - now - burstNanos;
+            if (wait > 0) return wait;
+            if (bucket.compareAndSet(arrival, next)) return 0;
+        }
+    }
+
+    /**
+     * Drop buckets that are full again; a later request recreates them with the same (full) state.
+     */
+    void evictIdle() {
+        long now = now();
+        arrivals.values().removeIf(bucket -> bucket.get() <= now);
+    }
+
+    int size() {
+        return arrivals.size();
+    }
+
+    private long now() {
+        return System.nanoTime() - origin;
+    }
+}
@@ -3,6 +3,9 @@ package com.digitalasset.quickstart.umbra;
 import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.stereotype.Component;
 
+import java.util.ArrayList;
+import java.util.List;
+
 @Component
 @ConfigurationProperties(prefix = "umbra")
 public class UmbraConfig {
@@ -10,6 +13,14 @@ public class UmbraConfig {
     private String operatorParty = "";
     private String oracleParty = "";
     private String packageId = "umbra-protocol";
+    private final Ledger ledger = new Ledger();
+    private final Projection projection = new Projection();
+    private final Submission submission = new Submission();
+    private final Liquidation liquidation = new Liquidation();
+    private final Interest interest = new Interest();
+    private final OracleFeed oracleFeed = new OracleFeed();
+    private final Http http = new Http();
+    private final RateLimit rateLimit = new RateLimit();
 
     // Template qualified names for PQS queries
     // These match the DAML module paths: Umbra.DarkPool:SpotOrder etc.
@@ -28,4 +39,203 @@ public class UmbraConfig {
     public void setOracleParty(String oracleParty) { this.oracleParty = oracleParty; }
     public String getPackageId() { return packageId; }
     public void setPackageId(String packageId) { this.packageId = packageId; }
+    public Ledger getLedger() { return ledger; }
+    public Projection getProjection() { return projection; }
+    public Submission getSubmission() { return submission; }
+    public Liquidation getLiquidation() { return liquidation; }
+    public Interest getInterest() { return interest; }
+    public OracleFeed getOracleFeed() { return oracleFeed; }
+    public Http getHttp() { return http; }
+    public RateLimit getRateLimit() { return rateLimit; }
+
+    /**
+     * Command submission settings: deduplication window, retry backoff and batch size for ledger writes.
+     */
+    public static class Ledger {
+        private long deduplicationSeconds = 600;
+        private int maxAttempts = 4;
+        private long retryBaseDelayMs = 200;
+        private long retryMaxDelayMs = 5_000;
+        private int maxCommandsPerTransaction = 50;
+
+        public long getDeduplicationSeconds() { return deduplicationSeconds; }
+        public void setDeduplicationSeconds(long deduplicationSeconds) { this.deduplicationSeconds = deduplicationSeconds; }
+        public int getMaxAttempts() { return maxAttempts; }
+        public void setMaxAttempts(int maxAttempts) { this.maxAttempts = maxAttempts; }
+        public long getRetryBaseDelayMs() { return retryBaseDelayMs; }
+        public void setRetryBaseDelayMs(long retryBaseDelayMs) { this.retryBaseDelayMs = retryBaseDelayMs; }
+        public long getRetryMaxDelayMs() { return retryMaxDelayMs; }
+        public void setRetryMaxDelayMs(long retryMaxDelayMs) { this.retryMaxDelayMs = retryMaxDelayMs; }
+        public int getMaxCommandsPerTransaction() { return maxCommandsPerTransaction; }
+        public void setMaxCommandsPerTransaction(int maxCommandsPerTransaction) { this.maxCommandsPerTransaction = maxCommandsPerTransaction; }
+    }
+
+    /**
+     * In-process active contract projection fed from the Ledger API. When disabled, all reads go to PQS;
+     * identical concurrent PQS reads are coalesced and their result reused for readCoalesceTtlMs (0: not reused).
+     */
+    public static class Projection {
+        private boolean enabled = false;
+        private String checkpointFile = "";
+        private long checkpointIntervalMs = 5_000;
+        private long reconnectDelayMs = 2_000;
+        private long readCoalesceTtlMs = 0;
+
+        public boolean isEnabled() { return enabled; }
+        public void setEnabled(boolean enabled) { this.enabled = enabled; }
+        public String getCheckpointFile() { return checkpointFile; }
+        public void setCheckpointFile(String checkpointFile) { this.checkpointFile = checkpointFile; }
+        public long getCheckpointIntervalMs() { return checkpointIntervalMs; }
+        public void setCheckpointIntervalMs(long checkpointIntervalMs) { this.checkpointIntervalMs = checkpointIntervalMs; }
+        public long getReconnectDelayMs() { return reconnectDelayMs; }
+        public void setReconnectDelayMs(long reconnectDelayMs) { this.reconnectDelayMs = reconnectDelayMs; }
+        public long getReadCoalesceTtlMs() { return readCoalesceTtlMs; }
+        public void setReadCoalesceTtlMs(long readCoalesceTtlMs) { this.readCoalesceTtlMs = readCoalesceTtlMs; }
+    }
+
+    /**
+     * Concurrency budgets for ledger submission lanes. Idle budget of higher-priority lanes is held back
+     * from lower ones, so the total never exceeds maxInFlight and user writes cannot crowd out liquidations.
+     */
+    public static class Submission {
+        private int maxInFlight = 32;
+        private int liquidationBudget = 8;
+        private int fillBudget = 8;
+        private int maintenanceBudget = 4;
+        private int userBudget = 12;
+
+        public int getMaxInFlight() { return maxInFlight; }
+        public void setMaxInFlight(int maxInFlight) { this.maxInFlight = maxInFlight; }
+        public int getLiquidationBudget() { return liquidationBudget; }
+        public void setLiquidationBudget(int liquidationBudget) { this.liquidationBudget = liquidationBudget; }
+        public int getFillBudget() { return fillBudget; }
+        public void setFillBudget(int fillBudget) { this.fillBudget = fillBudget; }
+        public int getMaintenanceBudget() { return maintenanceBudget; }
+        public void setMaintenanceBudget(int maintenanceBudget) { this.maintenanceBudget = maintenanceBudget; }
+        public int getUserBudget() { return userBudget; }
+        public void setUserBudget(int userBudget) { this.userBudget = userBudget; }
+    }
+
+    /**
+     * Liquidation sweep triggering: sweeps follow oracle and pool index changes after a short debounce,
+     * with a periodic sweep as a safety net for missed events. A submitted liquidation blocks resubmission of
+     * the same position until its archive is observed or inFlightTimeoutMs passes.
+     */
+    public static class Liquidation {
+        private long sweepDebounceMs = 100;
+        private long safetyNetIntervalMs = 30_000;
+        private long inFlightTimeoutMs = 60_000;
+
+        public long getSweepDebounceMs() { return sweepDebounceMs; }
+        public void setSweepDebounceMs(long sweepDebounceMs) { this.sweepDebounceMs = sweepDebounceMs; }
+        public long getSafetyNetIntervalMs() { return safetyNetIntervalMs; }
+        public void setSafetyNetIntervalMs(long safetyNetIntervalMs) { this.safetyNetIntervalMs = safetyNetIntervalMs; }
+        public long getInFlightTimeoutMs() { return inFlightTimeoutMs; }
+        public void setInFlightTimeoutMs(long inFlightTimeoutMs) { this.inFlightTimeoutMs = inFlightTimeoutMs; }
+    }
+
+    /**
+     * On-demand interest accrual: AccrueInterest is written once the projected index has drifted
+     * driftThresholdBps from the on-ledger index, or maxIntervalMs after the last accrual, checked every
+     * checkIntervalMs.
+     */
+    public static class Interest {
+        private double driftThresholdBps = 5.0;
+        private long maxIntervalMs = 3_600_000;
+        private long checkIntervalMs = 10_000;
+
+        public double getDriftThresholdBps() { return driftThresholdBps; }
+        public void setDriftThresholdBps(double driftThresholdBps) { this.driftThresholdBps = driftThresholdBps; }
+        public long getMaxIntervalMs() { return maxIntervalMs; }
+        public void setMaxIntervalMs(long maxIntervalMs) { this.maxIntervalMs = maxIntervalMs; }
+        public long getCheckIntervalMs() { return checkIntervalMs; }
+        public void setCheckIntervalMs(long checkIntervalMs) { this.checkIntervalMs = checkIntervalMs; }
+    }
+
+    /**
+     * Oracle feed pipeline: assets to publish, enabled PriceSource
+     * names and their settings. The median across sources is published when it deviates deviationThresholdBps
+     * from the on-ledger price, or after heartbeatMs without an update. historySize bounds the per-asset
+     * price history kept in memory.
+     */
+    public static class OracleFeed {
+        private List<String> assets = new ArrayList<>(List.of("CC"));
+        private List<String> sources = new ArrayList<>(List.of("mock"));
+        private long pollIntervalMs = 5_000;
+        private double deviationThresholdBps = 50.0;
+        private long heartbeatMs = 300_000;
+        private long sourceTimeoutMs = 1_000;
+        private String filePath = "";
+        private String socketHost = "";
+        private int socketPort = 0;
+        private int historySize = 8_192;
+
+        public List<String> getAssets() { return assets; }
+        public void setAssets(List<String> assets) { this.assets = assets; }
+        public List<String> getSources() { return sources; }
+        public void setSources(List<String> sources) { this.sources = sources; }
+        public long getPollIntervalMs() { return pollIntervalMs; }
+        public void setPollIntervalMs(long pollIntervalMs) { this.pollIntervalMs = pollIntervalMs; }
+        public double getDeviationThresholdBps() { return deviationThresholdBps; }
+        public void setDeviationThresholdBps(double deviationThresholdBps) { this.deviationThresholdBps = deviationThresholdBps; }
+        public long getHeartbeatMs() { return heartbeatMs; }
+        public void setHeartbeatMs(long heartbeatMs) { this.heartbeatMs = heartbeatMs; }
+        public long getSourceTimeoutMs() { return sourceTimeoutMs; }
+        public void setSourceTimeoutMs(long sourceTimeoutMs) { this.sourceTimeoutMs = sourceTimeoutMs; }
+        public String getFilePath() { return filePath; }
+        public void setFilePath(String filePath) { this.filePath = filePath; }
+        public String getSocketHost() { return socketHost; }
+        public void setSocketHost(String socketHost) { this.socketHost = socketHost; }
+        public int getSocketPort() { return socketPort; }
+        public void setSocketPort(int socketPort) { this.socketPort = socketPort; }
+        public int getHistorySize() { return historySize; }
+        public void setHistorySize(int historySize) { this.historySize = historySize; }
+    }
+
+    /**
+     * REST layer settings. Responses carrying values projected to the current time get a fresh ETag every
+     * projectedEtagSeconds even without contract changes.
+     */
+    public static class Http {
+        private long projectedEtagSeconds = 30;
+
+        public long getProjectedEtagSeconds() { return projectedEtagSeconds; }
+        public void setProjectedEtagSeconds(long projectedEtagSeconds) { this.projectedEtagSeconds = projectedEtagSeconds; }
+    }
+
+    /**
+     * Per-party request throttling for the Umbra REST API, one token bucket per party and endpoint class
+     * (reads, writes, risk simulations). A rate of zero or less disables the class. The operator party,
+     * which submits writes on behalf of traders, is exempt unless operatorExempt is turned off.
+     */
+    public static class RateLimit {
+        private boolean enabled = false;
+        private boolean operatorExempt = true;
+        private long idleEvictionMs = 60_000;
+        private double readPerSecond = 20;
+        private int readBurst = 40;
+        private double writePerSecond = 5;
+        private int writeBurst = 20;
+        private double riskPerSecond = 0.5;
+        private int riskBurst = 2;
+
+        public boolean isEnabled() { return enabled; }
+        public void setEnabled(boolean enabled) { this.enabled = enabled; }
+        public boolean isOperatorExempt() { return operatorExempt; }
+        public void setOperatorExempt(boolean operatorExempt) { this.operatorExempt = operatorExempt; }
+        public long getIdleEvictionMs() { return idleEvictionMs; }
+        public void setIdleEvictionMs(long idleEvictionMs) { this.idleEvictionMs = idleEvictionMs; }
+        public double getReadPerSecond() { return readPerSecond; }
+        public void setReadPerSecond(double readPerSecond) { this.readPerSecond = readPerSecond; }
+        public int getReadBurst() { return readBurst; }
+        public void setReadBurst(int readBurst) { this.readBurst = readBurst; }
+        public double getWritePerSecond() { return writePerSecond; }
+        public void setWritePerSecond(double writePerSecond) { this.writePerSecond = writePerSecond; }
+        public int getWriteBurst() { return writeBurst; }
+        public void setWriteBurst(int writeBurst) { this.writeBurst = writeBurst; }
+        public double getRiskPerSecond() { return riskPerSecond; }
+        public void setRiskPerSecond(double riskPerSecond) { this.riskPerSecond = riskPerSecond; }
+        public int getRiskBurst() { return riskBurst; }
+        public void setRiskBurst(int riskBurst) { this.riskBurst = riskBurst; }
+    }
 }
@@ -0,0 +1,468 @@
+package com.digitalasset.quickstart.umbra;
+
+import com.daml.ledger.api.v2.*;
+import io.grpc.Context;
+import io.grpc.Status;
+import io.grpc.stub.StreamObserver;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.temporal.ChronoUnit;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Predicate;
+
+import static com.digitalasset.quickstart.umbra.UmbraConfig.*;
+
+/**
+ * Optional in-memory view of the active Umbra contracts. Bootstraps from the Ledger API active contract
+ * snapshot, follows the update stream and checkpoints its offset to disk so a restart resumes from it.
+ * Offers the same read surface as {@link UmbraRepository}, which routes to it while it is live.
+ * Payloads use the same JSON-like shape as PQS (numerics and timestamps as strings, enums as constructors).
+ */
+@Component
+public class UmbraContractProjection {
+
+    /**
+     * Receives contract lifecycle events as they are applied to the projection.
+     */
+    public interface Listener {
+        default void onCreated(String template, String contractId, Map<String, Object> payload) {}
+        default void onArchived(String template, String contractId) {}
+        /** The projection was rebuilt from a fresh snapshot; drop any derived state. */
+        default void onReset() {}
+        /** All events of one transaction have been applied and delivered. */
+        default void onTransactionApplied() {}
+    }
+
+    /**
+     * One event of a transaction; {@code payload} is null for an archive.
+     */
+    private record Change(String template, String contractId, Map<String, Object> payload) {}
+
+    private static final Logger logger = LoggerFactory.getLogger(UmbraContractProjection.class);
+
+    private static final List<String> TEMPLATES = List.of(
+            SPOT_ORDER_TEMPLATE,
+            TRADE_CONFIRM_TEMPLATE,
+            DARK_POOL_OPERATOR_TEMPLATE,
+            LENDING_POOL_TEMPLATE,
+            SUPPLY_POSITION_TEMPLATE,
+            BORROW_POSITION_TEMPLATE,
+            ORACLE_PRICE_TEMPLATE
+    );
+
+    private final UmbraLedgerClient ledger;
+    private final UmbraConfig config;
+
+    // template qualified name -> contract id -> payload
+    private final Map<String, Map<String, Map<String, Object>>> contracts = new ConcurrentHashMap<>();
+    private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+    // Readers never see a transaction half-applied: writers apply a whole transaction under the write lock
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "umbra-projection");
+        t.setDaemon(true);
+        return t;
+    });
+
+    private volatile boolean live = false;
+    private volatile boolean stopped = false;
+    private volatile long offset = 0;
+    private volatile long catchUpOffset = Long.MAX_VALUE;
+    private volatile long lastCheckpointMillis = 0;
+    private volatile Context.CancellableContext stream;
+
+    @Autowired
+    public UmbraContractProjection(UmbraLedgerClient ledger, UmbraConfig config) {
+        this.ledger = ledger;
+        this.config = config;
+        for (String template : TEMPLATES) {
+            contracts.put(template, new ConcurrentHashMap<>());
+        }
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        if (!config.getProjection().isEnabled()) return;
+        executor.execute(() -> bootstrap(true));
+    }
+
+    @PreDestroy
+    public void stop() {
+        stopped = true;
+        live = false;
+        Context.CancellableContext current = stream;
+        if (current != null) current.cancel(null);
+        executor.shutdownNow();
+    }
+
+    public void addListener(Listener listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * True once the snapshot is loaded and the update stream has caught up with the ledger end seen at subscribe time.
+     */
+    public boolean isLive() {
+        return live;
+    }
+
+    /**
+     * Ledger offset up to which the projection has applied updates.
+     */
+    public long getOffset() {
+        return offset;
+    }
+
+    // ── Queries (same surface as UmbraRepository) ──────────
+
+    public List<Map<String, Object>> getActiveOrders() {
+        return rows(SPOT_ORDER_TEMPLATE, p -> "Open".equals(p.get("status")));
+    }
+
+    public List<Map<String, Object>> getActiveOrdersForTrader(String trader) {
+        return rows(SPOT_ORDER_TEMPLATE, p -> "Open".equals(p.get("status")) && trader.equals(p.get("trader")));
+    }
+
+    public List<Map<String, Object>> getTradesForTrader(String trader) {
+        return rows(TRADE_CONFIRM_TEMPLATE, p -> trader.equals(p.get("buyer")) || trader.equals(p.get("seller")));
+    }
+
+    public Optional<Map<String, Object>> getLendingPool() {
+        return first(LENDING_POOL_TEMPLATE, p -> true);
+    }
+
+    public List<Map<String, Object>> getSupplyPositions(String trader) {
+        return rows(SUPPLY_POSITION_TEMPLATE, p -> trader.equals(p.get("supplier")));
+    }
+
+    public List<Map<String, Object>> getBorrowPositions(String trader) {
+        return rows(BORROW_POSITION_TEMPLATE, p -> trader.equals(p.get("borrower")));
+    }
+
+    public List<Map<String, Object>> getAllBorrowPositions() {
+        return rows(BORROW_POSITION_TEMPLATE, p -> true);
+    }
+
+    public Optional<Map<String, Object>> getOraclePrice(String asset) {
+        return first(ORACLE_PRICE_TEMPLATE, p -> asset.equals(p.get("asset")));
+    }
+
+    public List<Map<String, Object>> getAllOraclePrices() {
+        return rows(ORACLE_PRICE_TEMPLATE, p -> true);
+    }
+
+    public Optional<Map<String, Object>> getDarkPoolOperator() {
+        return first(DARK_POOL_OPERATOR_TEMPLATE, p -> true);
+    }
+
+    private List<Map<String, Object>> rows(String template, Predicate<Map<String, Object>> filter) {
+        List<Map<String, Object>> out = new ArrayList<>();
+        lock.readLock().lock();
+        try {
+            for (var e : contracts.get(template).entrySet()) {
+                if (filter.test(e.getValue())) out.add(row(e.getKey(), e.getValue()));
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        return out;
+    }
+
+    private Optional<Map<String, Object>> first(String template, Predicate<Map<String, Object>> filter) {
+        lock.readLock().lock();
+        try {
+            for (var e : contracts.get(template).entrySet()) {
+                if (filter.test(e.getValue())) return Optional.of(row(e.getKey(), e.getValue()));
+            }
+            return Optional.empty();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private static Map<String, Object> row(String contractId, Map<String, Object> payload) {
+        Map<String, Object> row = new HashMap<>();
+        row.put("contractId", contractId);
+        row.put("payload", payload);
+        return row;
+    }
+
+    // ── Snapshot and stream ────────────────────────────────
+
+    private void bootstrap(boolean fromCheckpoint) {
+        if (stopped) return;
+        Optional<Long> checkpoint = fromCheckpoint ? readCheckpoint() : Optional.empty();
+        try {
+            var state = StateServiceGrpc.newBlockingStub(ledger.channel());
+            long at = checkpoint.isPresent()
+                    ? checkpoint.get()
+                    : state.getLedgerEnd(StateServiceOuterClass.GetLedgerEndRequest.getDefaultInstance()).getOffset();
+
+            lock.writeLock().lock();
+            try {
+                for (Map<String, Map<String, Object>> byId : contracts.values()) byId.clear();
+            } finally {
+                lock.writeLock().unlock();
+            }
+            listeners.forEach(Listener::onReset);
+
+            var acs = state.getActiveContracts(StateServiceOuterClass.GetActiveContractsRequest.newBuilder()
+                    .setActiveAtOffset(at)
+                    .setEventFormat(eventFormat())
+                    .build());
+            int count = 0;
+            while (acs.hasNext()) {
+                var response = acs.next();
+                if (response.hasActiveContract()) {
+                    apply(List.of(created(response.getActiveContract().getCreatedEvent())));
+                    count++;
+                }
+            }
+            offset = at;
+            logger.info("Umbra projection loaded {} active contracts at offset {}", count, at);
+            subscribe();
+        } catch (Exception e) {
+            logger.warn("Umbra projection bootstrap failed{}, retrying",
+                    checkpoint.isPresent() ? " from checkpoint " + checkpoint.get() : "", e);
+            // A checkpoint the participant can no longer serve (e.g. pruned) falls back to ledger end
+            executor.schedule(() -> bootstrap(false), config.getProjection().getReconnectDelayMs(), TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private void subscribe() {
+        if (stopped) return;
+        try {
+            catchUpOffset = StateServiceGrpc.newBlockingStub(ledger.channel())
+                    .getLedgerEnd(StateServiceOuterClass.GetLedgerEndRequest.getDefaultInstance())
+                    .getOffset();
+        } catch (Exception e) {
+            logger.warn("Umbra projection could not read the ledger end, retrying", e);
+            executor.schedule(this::subscribe, config.getProjection().getReconnectDelayMs(), TimeUnit.MILLISECONDS);
+            return;
+        }
+        var request = UpdateServiceOuterClass.GetUpdatesRequest.newBuilder()
+                .setBeginExclusive(offset)
+                .setUpdateFormat(TransactionFilterOuterClass.UpdateFormat.newBuilder()
+                        .setIncludeTransactions(TransactionFilterOuterClass.TransactionFormat.newBuilder()
+                                .setEventFormat(eventFormat())
+                                .setTransactionShape(TransactionFilterOuterClass.TransactionShape.TRANSACTION_SHAPE_ACS_DELTA)
+                                .build())
+                        .build())
+                .build();
+
+        Context.CancellableContext context = Context.current().withCancellation();
+        stream = context;
+        context.run(() -> UpdateServiceGrpc.newStub(ledger.channel()).getUpdates(request, new StreamObserver<>() {
+            @Override
+            public void onNext(UpdateServiceOuterClass.GetUpdatesResponse response) {
+                if (response.hasTransaction()) {
+                    applyTransaction(response.getTransaction());
+                } else if (response.hasOffsetCheckpoint()) {
+                    advance(response.getOffsetCheckpoint().getOffset());
+                }
+            }
+
+            @Override
+            public void onError(Throwable t) {
+                live = false;
+                if (stopped) return;
+                if (isPrunedOffset(t)) {
+                    // Updates after our offset are gone; only a fresh ACS snapshot can bring the projection back
+                    logger.warn("Umbra projection offset {} was pruned by the participant, reloading snapshot", offset, t);
+                    executor.schedule(() -> bootstrap(false),
+                            config.getProjection().getReconnectDelayMs(), TimeUnit.MILLISECONDS);
+                    return;
+                }
+                logger.warn("Umbra projection stream failed at offset {}, resubscribing", offset, t);
+                executor.schedule(UmbraContractProjection.this::subscribe,
+                        config.getProjection().getReconnectDelayMs(), TimeUnit.MILLISECONDS);
+            }
+
+            @Override
+            public void onCompleted() {
+                live = false;
+                if (stopped) return;
+                executor.execute(UmbraContractProjection.this::subscribe);
+            }
+        }));
+        // Already at the ledger end (e.g. right after a snapshot); otherwise live once the replay reaches it
+        markLiveIfCaughtUp();
+    }
+
+    private void markLiveIfCaughtUp() {
+        if (!live && !stopped && offset >= catchUpOffset) {
+            live = true;
+            logger.info("Umbra projection live at offset {}", offset);
+        }
+    }
+
+    private static boolean isPrunedOffset(Throwable t) {
+        String description = Status.fromThrowable(t).getDescription();
+        return description != null && description.contains("PARTICIPANT_PRUNED_DATA_ACCESSED");
+    }
+
+    private void applyTransaction(TransactionOuterClass.Transaction tx) {
+        List<Change> changes = new ArrayList<>(tx.getEventsCount());
+        for (EventOuterClass.Event event : tx.getEventsList()) {
+            if (event.hasCreated()) {
+                changes.add(created(event.getCreated()));
+            } else if (event.hasArchived()) {
+                changes.add(new Change(qualifiedName(event.getArchived().getTemplateId()), event.getArchived().getContractId(), null));
+            }
+        }
+        apply(changes);
+        advance(tx.getOffset());
+    }
+
+    private static Change created(EventOuterClass.CreatedEvent created) {
+        return new Change(qualifiedName(created.getTemplateId()), created.getContractId(), toMap(created.getCreateArguments()));
+    }
+
+    /**
+     * Apply a transaction's changes in one step, then tell listeners about the ones that took effect.
+     */
+    private void apply(List<Change> changes) {
+        List<Change> applied = new ArrayList<>(changes.size());
+        lock.writeLock().lock();
+        try {
+            for (Change change : changes) {
+                Map<String, Map<String, Object>> byId = contracts.get(change.template());
+                if (byId == null) continue;
+                if (change.payload() != null) {
+                    byId.put(change.contractId(), change.payload());
+                    applied.add(change);
+                } else if (byId.remove(change.contractId()) != null) {
+                    applied.add(change);
+                }
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+        for (Listener l : listeners) {
+            for (Change change : applied) {
+                if (change.payload() != null) {
+                    l.onCreated(change.template(), change.contractId(), change.payload());
+                } else {
+                    l.onArchived(change.template(), change.contractId());
+                }
+            }
+            l.onTransactionApplied();
+        }
+    }
+
+    private void advance(long newOffset) {
+        offset = newOffset;
+        markLiveIfCaughtUp();
+        long now = System.currentTimeMillis();
+        if (now - lastCheckpointMillis >= config.getProjection().getCheckpointIntervalMs()) {
+            lastCheckpointMillis = now;
+            writeCheckpoint(newOffset);
+        }
+    }
+
+    private TransactionFilterOuterClass.EventFormat eventFormat() {
+        var filters = TransactionFilterOuterClass.Filters.newBuilder();
+        for (String template : TEMPLATES) {
+            filters.addCumulative(TransactionFilterOuterClass.CumulativeFilter.newBuilder()
+                    .setTemplateFilter(TransactionFilterOuterClass.TemplateFilter.newBuilder()
+                            .setTemplateId(ledger.templateId(template))
+                            .build())
+                    .build());
+        }
+        var format = TransactionFilterOuterClass.EventFormat.newBuilder().setVerbose(true);
+        // The oracle party signs OraclePrice and may not list the operator as observer
+        for (String party : new LinkedHashSet<>(List.of(config.getOperatorParty(), config.getOracleParty()))) {
+            if (!party.isBlank()) format.putFiltersByParty(party, filters.build());
+        }
+        return format.build();
+    }
+
+    private static String qualifiedName(ValueOuterClass.Identifier id) {
+        return id.getModuleName() + ":" + id.getEntityName();
+    }
+
+    // ── Offset checkpoint ──────────────────────────────────
+
+    private Optional<Long> readCheckpoint() {
+        String file = config.getProjection().getCheckpointFile();
+        if (file.isBlank()) return Optional.empty();
+        try {
+            Path path = Path.of(file);
+            if (!Files.exists(path)) return Optional.empty();
+            return Optional.of(Long.parseLong(Files.readString(path).trim()));
+        } catch (IOException | NumberFormatException e) {
+            logger.warn("Ignoring unreadable projection checkpoint {}", file, e);
+            return Optional.empty();
+        }
+    }
+
+    private void writeCheckpoint(long at) {
+        String file = config.getProjection().getCheckpointFile();
+        if (file.isBlank()) return;
+        try {
+            Path path = Path.of(file);
+            Path tmp = path.resolveSibling(path.getFileName() + ".tmp");
+            Files.writeString(tmp, Long.toString(at));
+            Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            logger.warn("Failed to write projection checkpoint {}", file, e);
+        }
+    }
+
+    // ── Value conversion (PQS JSON shape) ──────────────────
+
+    private static Map<String, Object> toMap(ValueOuterClass.Record record) {
+        Map<String, Object> out = new LinkedHashMap<>();
+        for (ValueOuterClass.RecordField field : record.getFieldsList()) {
+            out.put(field.getLabel(), toJson(field.getValue()));
+        }
+        return out;
+    }
+
+    private static Object toJson(ValueOuterClass.Value value) {
+        return switch (value.getSumCase()) {
+            case RECORD -> toMap(value.getRecord());
+            case VARIANT -> {
+                Map<String, Object> variant = new LinkedHashMap<>();
+                variant.put("tag", value.getVariant().getConstructor());
+                variant.put("value", toJson(value.getVariant().getValue()));
+                yield variant;
+            }
+            case ENUM -> value.getEnum().getConstructor();
+            case NUMERIC -> value.getNumeric();
+            case TEXT -> value.getText();
+            case PARTY -> value.getParty();
+            case CONTRACT_ID -> value.getContractId();
+            case INT64 -> Long.toString(value.getInt64());
+            case BOOL -> value.getBool();
+            case TIMESTAMP -> Instant.EPOCH.plus(value.getTimestamp(), ChronoUnit.MICROS).toString();
+            case DATE -> LocalDate.ofEpochDay(value.getDate()).toString();
+            case OPTIONAL -> value.getOptional().hasValue() ? toJson(value.getOptional().getValue()) : null;
+            case LIST -> value.getList().getElementsList().stream().map(UmbraContractProjection::toJson).toList();
+            case TEXT_MAP -> {
+                Map<String, Object> map = new LinkedHashMap<>();
+                for (var entry : value.getTextMap().getEntriesList()) map.put(entry.getKey(), toJson(entry.getValue()));
+                yield map;
+            }
+            case GEN_MAP -> value.getGenMap().getEntriesList().stream()
+                    .map(entry -> Arrays.asList(toJson(entry.getKey()), toJson(entry.getValue())))
+                    .toList();
+            case UNIT, SUM_NOT_SET -> Map.of();
+        };
+    }
+}
@@ -2,19 +2,27 @@ package com.digitalasset.quickstart.umbra;
 
 import com.daml.ledger.api.v2.ValueOuterClass;
 import com.digitalasset.quickstart.security.AuthenticatedPartyProvider;
+import com.digitalasset.quickstart.umbra.LedgerSubmissionScheduler.Lane;
+import com.digitalasset.quickstart.umbra.UmbraLedgerClient.ResultShape;
 import io.grpc.Status;
 import io.grpc.StatusRuntimeException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
 
+import java.time.Instant;
 import java.util.*;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
 
 import static com.digitalasset.quickstart.umbra.ProtoHelper.*;
+import static com.digitalasset.quickstart.umbra.UmbraConfig.*;
 
 /**
  * REST API controller for Umbra dark pool and lending protocol.
@@ -28,18 +36,39 @@ public class UmbraController {
     private final UmbraLedgerClient ledger;
     private final UmbraConfig config;
     private final AuthenticatedPartyProvider authenticatedPartyProvider;
+    private final LendingPoolSequencer poolSequencer;
+    private final PriceShockSimulator priceShockSimulator;
+    private final OraclePriceCache oracleCache;
+    private final InterestIndexProjector interestIndex;
+    private final OraclePriceHistory priceHistory;
+    private final ContractVersions versions;
+    private final Executor taskExecutor;
 
     @Autowired
     public UmbraController(
             UmbraRepository repo,
             UmbraLedgerClient ledger,
             UmbraConfig config,
-            AuthenticatedPartyProvider authenticatedPartyProvider
+            AuthenticatedPartyProvider authenticatedPartyProvider,
+            LendingPoolSequencer poolSequencer,
+            PriceShockSimulator priceShockSimulator,
+            OraclePriceCache oracleCache,
+            InterestIndexProjector interestIndex,
+            OraclePriceHistory priceHistory,
+            ContractVersions versions,
+            @Qualifier("applicationTaskExecutor") Executor taskExecutor
     ) {
         this.repo = repo;
         this.ledger = ledger;
         this.config = config;
         this.authenticatedPartyProvider = authenticatedPartyProvider;
+        this.poolSequencer = poolSequencer;
+        this.priceShockSimulator = priceShockSimulator;
+        this.oracleCache = oracleCache;
+        this.interestIndex = interestIndex;
+        this.priceHistory = priceHistory;
+        this.versions = versions;
+        this.taskExecutor = taskExecutor;
     }
 
     // ── Dark Pool Endpoints ────────────────────────────────
@@ -48,12 +77,13 @@ public class UmbraController {
      * GET /api/orderbook → Aggregated order book (no trader info exposed)
      */
     @GetMapping("/orderbook")
-    public ResponseEntity<Map<String, Object>> getOrderBook() {
+    public ResponseEntity<?> getOrderBook(WebRequest request) {
+        if (notModified(request, versions.tag(SPOT_ORDER_TEMPLATE))) return null;
         try {
-            return ResponseEntity.ok(repo.getOrderBook());
+            return ResponseEntity.ok().varyBy(HttpHeaders.ACCEPT).body(repo.getOrderBook());
         } catch (Exception e) {
             logger.error("Failed to get orderbook", e);
-            return ResponseEntity.internalServerError().body(Map.<String, Object>of("error", e.getMessage()));
+            return ResponseEntity.internalServerError().body(Map.<String, Object>of("error", String.valueOf(e.getMessage())));
         }
     }
 
@@ -102,7 +132,7 @@ public class UmbraController {
                             List.of(config.getOperatorParty(), trader)
                     ).thenApply(tx -> ResponseEntity.ok(Map.<String, Object>of(
                             "status", "created",
-                            "transactionId", tx.getUpdateId()
+                            "transactionId", tx.updateId()
                     ))).exceptionally(e -> {
                         logger.error("Failed to create order", e);
                         return mapLedgerWriteFailure("Create order", e);
@@ -113,6 +143,103 @@ public class UmbraController {
                 ));
     }
 
+    /**
+     * POST /api/orders/batch → Create several SpotOrders for one trader
+     * Body: { trader?, orders: [{ baseAsset?, quoteAsset?, side, price, quantity }, ...] }
+     * Valid orders are submitted as CreateOrder exercises, up to maxCommandsPerTransaction per transaction.
+     * Returns one result per order, in request order.
+     */
+    @PostMapping("/orders/batch")
+    public CompletableFuture<ResponseEntity<Map<String, Object>>> createOrders(@RequestBody Map<String, Object> body) {
+        ResponseEntity<Map<String, Object>> guard = requireOperatorSession("Create orders");
+        if (guard != null) {
+            return CompletableFuture.completedFuture(guard);
+        }
+
+        final String trader = getPartyFromBodyOrAuth(body.get("trader"));
+        if (trader == null || trader.isBlank()) {
+            return CompletableFuture.completedFuture(
+                    ResponseEntity.badRequest().body(Map.<String, Object>of("error", "Trader party not found"))
+            );
+        }
+        if (!(body.get("orders") instanceof List<?> rawOrders) || rawOrders.isEmpty()) {
+            return CompletableFuture.completedFuture(
+                    ResponseEntity.badRequest().body(Map.<String, Object>of("error", "orders must be a non-empty list"))
+            );
+        }
+        Optional<String> operatorCid = repo.getDarkPoolOperator().map(op -> (String) op.get("contractId"));
+        if (operatorCid.isEmpty()) {
+            return CompletableFuture.completedFuture(
+                    ResponseEntity.badRequest().body(Map.<String, Object>of("error", "DarkPoolOperator not found"))
+            );
+        }
+
+        List<Map<String, Object>> results = new ArrayList<>();
+        List<Integer> accepted = new ArrayList<>();
+        List<UmbraLedgerClient.Exercise> exercises = new ArrayList<>();
+        for (int i = 0; i < rawOrders.size(); i++) {
+            Map<String, Object> result = new LinkedHashMap<>();
+            result.put("index", i);
+            results.add(result);
+            if (!(rawOrders.get(i) instanceof Map<?, ?> raw)) {
+                result.put("status", "rejected");
+                result.put("error", "Order must be an object");
+                continue;
+            }
+            OrderRequest order = OrderRequest.parse(raw);
+            Optional<String> invalid = order.validate();
+            if (invalid.isPresent()) {
+                result.put("status", "rejected");
+                result.put("error", invalid.get());
+                continue;
+            }
+            accepted.add(i);
+            exercises.add(createOrderExercise(operatorCid.get(), trader, order));
+        }
+
+        List<String> actAs = List.of(config.getOperatorParty(), trader);
+        int chunkSize = Math.max(1, config.getLedger().getMaxCommandsPerTransaction());
+        List<CompletableFuture<Void>> chunks = new ArrayList<>();
+        for (int from = 0; from < exercises.size(); from += chunkSize) {
+            int to = Math.min(from + chunkSize, exercises.size());
+            List<Integer> indexes = accepted.subList(from, to);
+            chunks.add(ledger.exerciseChoices(
+                    Lane.USER,
+                    UmbraLedgerClient.randomCommandId(),
+                    exercises.subList(from, to),
+                    null,
+                    actAs,
+                    ResultShape.created(SPOT_ORDER_TEMPLATE)
+            ).handle((tx, e) -> {
+                // Created events follow command order, so the i-th SpotOrder belongs to the i-th exercise
+                List<String> created = tx == null ? List.of() : tx.createdContractIds().getOrDefault(SPOT_ORDER_TEMPLATE, List.of());
+                for (int k = 0; k < indexes.size(); k++) {
+                    Map<String, Object> result = results.get(indexes.get(k));
+                    if (e == null) {
+                        result.put("status", "created");
+                        result.put("transactionId", tx.updateId());
+                        if (created.size() == indexes.size()) result.put("contractId", created.get(k));
+                    } else {
+                        Throwable root = unwrap(e);
+                        result.put("status", "failed");
+                        result.put("error", root.getMessage() == null ? "Create order failed" : root.getMessage());
+                    }
+                }
+                if (e != null) logger.error("Failed to create {} orders", indexes.size(), e);
+                return null;
+            }));
+        }
+
+        return CompletableFuture.allOf(chunks.toArray(new CompletableFuture<?>[0])).thenApply(ignored -> {
+            long created = results.stream().filter(r -> "created".equals(r.get("status"))).count();
+            return ResponseEntity.ok(Map.<String, Object>of(
+                    "created", created,
+                    "failed", results.size() - created,
+                    "results", results
+            ));
+        });
+    }
+
     /**
      * DELETE /api/orders/:id → Cancel a SpotOrder
      */
@@ -136,16 +263,153 @@ public class UmbraController {
                 trader
         ).thenApply(tx -> ResponseEntity.ok(Map.<String, Object>of(
                 "status", "cancelled",
-                "transactionId", tx.getUpdateId()
+                "transactionId", tx.updateId()
         ))).exceptionally(e -> {
             logger.error("Failed to cancel order", e);
             return mapLedgerWriteFailure("Cancel order", e);
         });
     }
 
+    /**
+     * POST /api/orders/:id/replace → Cancel a SpotOrder and create its replacement in one transaction
+     * Body: { baseAsset?, quoteAsset?, side?, price?, quantity? } — omitted fields keep the cancelled order's values.
+     */
+    @PostMapping("/orders/{contractId}/replace")
+    public CompletableFuture<ResponseEntity<Map<String, Object>>> replaceOrder(
+            @PathVariable String contractId,
+            @RequestBody Map<String, Object> body
+    ) {
+        ResponseEntity<Map<String, Object>> guard = requireOperatorSession("Replace order");
+        if (guard != null) {
+            return CompletableFuture.completedFuture(guard);
+        }
+
+        String trader = authenticatedPartyProvider.getPartyOrFail();
+        Optional<Map<String, Object>> existing = repo.getActiveOrdersForTrader(trader).stream()
+                .filter(row -> contractId.equals(row.get("contractId")))
+                .findFirst();
+        if (existing.isEmpty()) {
+            return CompletableFuture.completedFuture(
+                    ResponseEntity.status(404).body(Map.<String, Object>of("error", "Open order not found"))
+            );
+        }
+        @SuppressWarnings("unchecked")
+        Map<String, Object> merged = new HashMap<>((Map<String, Object>) existing.get().get("payload"));
+        body.forEach((k, v) -> { if (v != null) merged.put(k, v); });
+        OrderRequest order = OrderRequest.parse(merged);
+        Optional<String> invalid = order.validate();
+        if (invalid.isPresent()) {
+            return CompletableFuture.completedFuture(
+                    ResponseEntity.badRequest().body(Map.<String, Object>of("error", invalid.get()))
+            );
+        }
+        Optional<String> operatorCid = repo.getDarkPoolOperator().map(op -> (String) op.get("contractId"));
+        if (operatorCid.isEmpty()) {
+            return CompletableFuture.completedFuture(
+                    ResponseEntity.badRequest().body(Map.<String, Object>of("error", "DarkPoolOperator not found"))
+            );
+        }
+
+        return ledger.exerciseChoices(
+                Lane.USER,
+                UmbraLedgerClient.commandId("replace-order", contractId),
+                List.of(cancelOrderExercise(contractId), createOrderExercise(operatorCid.get(), trader, order)),
+                null,
+                List.of(config.getOperatorParty(), trader),
+                ResultShape.created(SPOT_ORDER_TEMPLATE)
+        ).thenApply(tx -> {
+            // CancelOrder re-creates the old order as Cancelled first; the replacement is the last SpotOrder created
+            List<String> created = tx.createdContractIds().getOrDefault(SPOT_ORDER_TEMPLATE, List.of());
+            Map<String, Object> out = new LinkedHashMap<>();
+            out.put("status", "replaced");
+            out.put("cancelledContractId", contractId);
+            if (!created.isEmpty()) out.put("contractId", created.get(created.size() - 1));
+            out.put("transactionId", tx.updateId());
+            return ResponseEntity.ok(out);
+        }).exceptionally(e -> {
+            logger.error("Failed to replace order", e);
+            return mapLedgerWriteFailure("Replace order", e);
+        });
+    }
+
+    /**
+     * POST /api/orders/cancel → Cancel all of the caller's open SpotOrders, optionally filtered
+     * Body: { baseAsset?, quoteAsset?, side? }
+     * CancelOrder exercises are submitted up to maxCommandsPerTransaction per transaction.
+     */
+    @PostMapping("/orders/cancel")
+    public CompletableFuture<ResponseEntity<Map<String, Object>>> cancelOrders(
+            @RequestBody(required = false) Map<String, Object> body
+    ) {
+        ResponseEntity<Map<String, Object>> guard = requireOperatorSession("Cancel orders");
+        if (guard != null) {
+            return CompletableFuture.completedFuture(guard);
+        }
+
+        String trader = authenticatedPartyProvider.getPartyOrFail();
+        Map<String, Object> filter = body != null ? body : Map.of();
+        Object baseAsset = filter.get("baseAsset");
+        Object quoteAsset = filter.get("quoteAsset");
+        String side = filter.get("side") != null ? normalizeSide(String.valueOf(filter.get("side"))) : null;
+        List<String> contractIds = repo.getActiveOrdersForTrader(trader).stream()
+                .filter(row -> {
+                    @SuppressWarnings("unchecked")
+                    Map<String, Object> payload = (Map<String, Object>) row.get("payload");
+                    return (baseAsset == null || String.valueOf(baseAsset).equals(payload.get("baseAsset")))
+                            && (quoteAsset == null || String.valueOf(quoteAsset).equals(payload.get("quoteAsset")))
+                            && (side == null || side.equals(String.valueOf(payload.get("side"))));
+                })
+                .map(row -> String.valueOf(row.get("contractId")))
+                .sorted()
+                .toList();
+
+        List<Map<String, Object>> results = new ArrayList<>();
+        int chunkSize = Math.max(1, config.getLedger().getMaxCommandsPerTransaction());
+        List<CompletableFuture<Void>> chunks = new ArrayList<>();
+        for (int from = 0; from < contractIds.size(); from += chunkSize) {
+            List<String> chunk = contractIds.subList(from, Math.min(from + chunkSize, contractIds.size()));
+            chunks.add(ledger.exerciseChoices(
+                    Lane.USER,
+                    UmbraLedgerClient.commandId("cancel-orders", chunk.toArray(String[]::new)),
+                    chunk.stream().map(this::cancelOrderExercise).toList(),
+                    null,
+                    List.of(trader),
+                    ResultShape.COMPLETION
+            ).handle((tx, e) -> {
+                synchronized (results) {
+                    for (String cid : chunk) {
+                        Map<String, Object> result = new LinkedHashMap<>();
+                        result.put("contractId", cid);
+                        if (e == null) {
+                            result.put("status", "cancelled");
+                            result.put("transactionId", tx.updateId());
+                        } else {
+                            Throwable root = unwrap(e);
+                            result.put("status", "failed");
+                            result.put("error", root.getMessage() == null ? "Cancel order failed" : root.getMessage());
+                        }
+                        results.add(result);
+                    }
+                }
+                if (e != null) logger.error("Failed to cancel {} orders", chunk.size(), e);
+                return null;
+            }));
+        }
+
+        return CompletableFuture.allOf(chunks.toArray(new CompletableFuture<?>[0])).thenApply(ignored -> {
+            long cancelled = results.stream().filter(r -> "cancelled".equals(r.get("status"))).count();
+            return ResponseEntity.ok(Map.<String, Object>of(
+                    "cancelled", cancelled,
+                    "failed", results.size() - cancelled,
+                    "results", results
+            ));
+        });
+    }
+
     @GetMapping("/orders/mine")
-    public ResponseEntity<List<Map<String, Object>>> getMyOrders() {
+    public ResponseEntity<List<Map<String, Object>>> getMyOrders(WebRequest request) {
         String trader = authenticatedPartyProvider.getPartyOrFail();
+        if (notModified(request, versions.tag(SPOT_ORDER_TEMPLATE).map(tag -> tag + "." + partyTag(trader)))) return null;
         try {
             List<Map<String, Object>> rows = repo.getActiveOrdersForTrader(trader);
             List<Map<String, Object>> out = rows.stream().map(this::mapOrder).toList();
@@ -160,11 +424,10 @@ public class UmbraController {
      * GET /api/trades/:trader → Trade confirms for a specific trader
      */
     @GetMapping("/trades/{trader}")
-    public ResponseEntity<List<Map<String, Object>>> getTrades(@PathVariable String trader) {
+    public ResponseEntity<List<MarketData.Trade>> getTrades(@PathVariable String trader) {
         try {
-            List<Map<String, Object>> rows = repo.getTradesForTrader(trader);
-            List<Map<String, Object>> out = rows.stream().map(this::mapTrade).toList();
-            return ResponseEntity.ok(out);
+            List<MarketData.Trade> out = repo.getTradesForTrader(trader).stream().map(MarketData.Trade::of).toList();
+            return ResponseEntity.ok().varyBy(HttpHeaders.ACCEPT).body(out);
         } catch (Exception e) {
             logger.error("Failed to get trades", e);
             return ResponseEntity.internalServerError().build();
@@ -174,34 +437,34 @@ public class UmbraController {
     // ── Lending Endpoints ──────────────────────────────────
 
     /**
-     * GET /api/pool → LendingPool stats
+     * GET /api/pool → LendingPool stats, with index and rates projected to the current instant
      */
     @GetMapping("/pool")
-    public ResponseEntity<Map<String, Object>> getPool() {
+    public ResponseEntity<Map<String, Object>> getPool(WebRequest request) {
+        if (notModified(request, versions.tag(LENDING_POOL_TEMPLATE).map(tag -> tag + "." + projectionBucket()))) return null;
         try {
-            return repo.getLendingPool()
-                    .map(pool -> {
-                        @SuppressWarnings("unchecked")
-                        Map<String, Object> payload = (Map<String, Object>) pool.get("payload");
-                        double totalSupply = Double.parseDouble(String.valueOf(payload.get("totalSupply")));
-                        double totalBorrows = Double.parseDouble(String.valueOf(payload.get("totalBorrows")));
-                        double utilization = totalSupply == 0 ? 0 : totalBorrows / totalSupply;
-                        double borrowApy = computeBorrowApy(payload, utilization);
-                        double supplyApy = borrowApy * utilization * 0.90;
+            return interestIndex.now()
+                    .map(projected -> {
+                        InterestIndexProjector.PoolState pool = projected.pool();
+                        double totalSupply = pool.totalSupply().doubleValue();
+                        double totalBorrows = projected.totalBorrows().doubleValue();
 
                         Map<String, Object> stats = new LinkedHashMap<>();
-                        stats.put("contractId", pool.get("contractId"));
-                        stats.put("asset", payload.get("asset"));
+                        stats.put("contractId", pool.contractId());
+                        stats.put("asset", pool.asset());
                         stats.put("totalSupply", totalSupply);
                         stats.put("totalBorrows", totalBorrows);
                         stats.put("totalSupplied", totalSupply);
                         stats.put("totalBorrowed", totalBorrows);
-                        stats.put("utilization", utilization);
+                        stats.put("utilization", projected.utilization());
                         stats.put("tvl", totalSupply - totalBorrows);
-                        stats.put("supplyApy", supplyApy);
-                        stats.put("borrowApy", borrowApy);
-                        stats.put("rateModel", payload.get("rateModel"));
-                        stats.put("accumulatedIndex", payload.get("accumulatedIndex"));
+                        stats.put("supplyApy", projected.supplyApy());
+                        stats.put("borrowApy", projected.borrowApy());
+                        stats.put("rateModel", pool.payload().get("rateModel"));
+                        stats.put("accumulatedIndex", projected.accumulatedIndex().toPlainString());
+                        stats.put("ledgerAccumulatedIndex", pool.accumulatedIndex().toPlainString());
+                        stats.put("lastUpdateTime", pool.lastUpdateTime().toString());
+                        stats.put("asOf", projected.asOf().toString());
                         return ResponseEntity.ok(stats);
                     })
                     .orElse(ResponseEntity.ok(Map.<String, Object>of("error", "No lending pool found")));
@@ -235,30 +498,23 @@ public class UmbraController {
         final String supplierParty = supplier;
         final double supplyAmount = amount;
 
-        return repo.getLendingPool()
-                .map(pool -> {
-                    String poolCid = (String) pool.get("contractId");
-                    ValueOuterClass.Value choiceArg = recordVal(
-                            field("supplier", partyVal(supplierParty)),
-                            field("amount", numericVal(supplyAmount))
-                    );
-                    return ledger.exerciseChoiceMulti(
-                            poolCid,
-                            "Umbra.Lending", "LendingPool",
-                            "Supply",
-                            choiceArg,
-                            List.of(config.getOperatorParty(), supplierParty)
-                    ).thenApply(tx -> ResponseEntity.ok(Map.<String, Object>of(
-                            "status", "supplied",
-                            "transactionId", tx.getUpdateId()
-                    ))).exceptionally(e -> {
-                        logger.error("Supply failed", e);
-                        return mapLedgerWriteFailure("Supply", e);
-                    });
-                })
-                .orElse(CompletableFuture.completedFuture(
-                        ResponseEntity.badRequest().body(Map.<String, Object>of("error", "LendingPool not found"))
-                ));
+        ValueOuterClass.Value choiceArg = recordVal(
+                field("supplier", partyVal(supplierParty)),
+                field("amount", numericVal(supplyAmount))
+        );
+        return poolSequencer.submit(
+                Lane.USER,
+                UmbraLedgerClient.randomCommandId(),
+                "Supply",
+                choiceArg,
+                List.of(config.getOperatorParty(), supplierParty)
+        ).thenApply(tx -> ResponseEntity.ok(Map.<String, Object>of(
+                "status", "supplied",
+                "transactionId", tx.updateId()
+        ))).exceptionally(e -> {
+            logger.error("Supply failed", e);
+            return mapLedgerWriteFailure("Supply", e);
+        });
     }
 
     /**
@@ -285,57 +541,45 @@ public class UmbraController {
             collateralAmount = parseDouble(body.get("collateral"));
         }
 
-        String oracleCid = body.get("oracleCid") == null ? null : String.valueOf(body.get("oracleCid"));
-        String collateralOracleCid = body.get("collateralOracleCid") == null ? null : String.valueOf(body.get("collateralOracleCid"));
-        if (oracleCid == null || oracleCid.isBlank()) {
-            oracleCid = repo.getOraclePrice("USDC").map(v -> (String) v.get("contractId")).orElse(null);
-        }
-        if (collateralOracleCid == null || collateralOracleCid.isBlank()) {
-            collateralOracleCid = repo.getOraclePrice("CC").map(v -> (String) v.get("contractId")).orElse(null);
-        }
         if (borrower == null || borrower.isBlank()) {
             return CompletableFuture.completedFuture(
                     ResponseEntity.badRequest().body(Map.<String, Object>of("error", "Borrower party not found"))
             );
         }
-        if (oracleCid == null || collateralOracleCid == null) {
-            return CompletableFuture.completedFuture(
-                    ResponseEntity.badRequest().body(Map.<String, Object>of("error", "Oracle contracts not initialized"))
-            );
-        }
         final String borrowerParty = borrower;
         final double requestedBorrowAmount = borrowAmount;
         final double requestedCollateralAmount = collateralAmount;
-        final String borrowOracleCid = oracleCid;
-        final String collateralPriceOracleCid = collateralOracleCid;
 
-        return repo.getLendingPool()
-                .map(pool -> {
-                    String poolCid = (String) pool.get("contractId");
-                    ValueOuterClass.Value choiceArg = recordVal(
-                            field("borrower", partyVal(borrowerParty)),
-                            field("borrowAmount", numericVal(requestedBorrowAmount)),
-                            field("collateralAmount", numericVal(requestedCollateralAmount)),
-                            field("oracleCid", contractIdVal(borrowOracleCid)),
-                            field("collateralOracleCid", contractIdVal(collateralPriceOracleCid))
-                    );
-                    return ledger.exerciseChoiceMulti(
-                            poolCid,
-                            "Umbra.Lending", "LendingPool",
-                            "Borrow",
-                            choiceArg,
-                            List.of(config.getOperatorParty(), borrowerParty)
-                    ).thenApply(tx -> ResponseEntity.ok(Map.<String, Object>of(
-                            "status", "borrowed",
-                            "transactionId", tx.getUpdateId()
-                    ))).exceptionally(e -> {
-                        logger.error("Borrow failed", e);
-                        return mapLedgerWriteFailure("Borrow", e);
-                    });
-                })
-                .orElse(CompletableFuture.completedFuture(
-                        ResponseEntity.badRequest().body(Map.<String, Object>of("error", "LendingPool not found"))
-                ));
+        // Both oracle lookups run concurrently; the pool is resolved by the sequencer when the write is due
+        CompletableFuture<Optional<String>> borrowOracle = oracleContractId(body.get("oracleCid"), "USDC");
+        CompletableFuture<Optional<String>> collateralOracle = oracleContractId(body.get("collateralOracleCid"), "CC");
+        return borrowOracle.thenCombine(collateralOracle, (oracleCid, collateralOracleCid) -> {
+            if (oracleCid.isEmpty() || collateralOracleCid.isEmpty()) {
+                return CompletableFuture.completedFuture(
+                        ResponseEntity.badRequest().body(Map.<String, Object>of("error", "Oracle contracts not initialized"))
+                );
+            }
+            ValueOuterClass.Value choiceArg = recordVal(
+                    field("borrower", partyVal(borrowerParty)),
+                    field("borrowAmount", numericVal(requestedBorrowAmount)),
+                    field("collateralAmount", numericVal(requestedCollateralAmount)),
+                    field("oracleCid", contractIdVal(oracleCid.get())),
+                    field("collateralOracleCid", contractIdVal(collateralOracleCid.get()))
+            );
+            return poolSequencer.submit(
+                    Lane.USER,
+                    UmbraLedgerClient.randomCommandId(),
+                    "Borrow",
+                    choiceArg,
+                    List.of(config.getOperatorParty(), borrowerParty)
+            ).thenApply(tx -> ResponseEntity.ok(Map.<String, Object>of(
+                    "status", "borrowed",
+                    "transactionId", tx.updateId()
+            )));
+        }).thenCompose(response -> response).exceptionally(e -> {
+            logger.error("Borrow failed", e);
+            return mapLedgerWriteFailure("Borrow", e);
+        });
     }
 
     /**
@@ -383,7 +627,7 @@ public class UmbraController {
                 borrower
         ).thenApply(tx -> ResponseEntity.ok(Map.<String, Object>of(
                 "status", "repaid",
-                "transactionId", tx.getUpdateId()
+                "transactionId", tx.updateId()
         ))).exceptionally(e -> {
             logger.error("Repay failed", e);
             return mapLedgerWriteFailure("Repay", e);
@@ -394,42 +638,206 @@ public class UmbraController {
      * GET /api/positions/:trader → Supply + Borrow positions for trader
      */
     @GetMapping("/positions/{trader}")
-    public ResponseEntity<Map<String, Object>> getPositions(@PathVariable String trader) {
-        try {
-            List<Map<String, Object>> supply = repo.getSupplyPositions(trader).stream().map(this::mapSupplyPosition).toList();
-            List<Map<String, Object>> borrow = repo.getBorrowPositions(trader).stream().map(this::mapBorrowPosition).toList();
-            return ResponseEntity.ok(Map.<String, Object>of("supply", supply, "borrow", borrow));
-        } catch (Exception e) {
-            logger.error("Failed to get positions", e);
-            return ResponseEntity.internalServerError().body(Map.<String, Object>of("error", e.getMessage()));
-        }
+    public CompletableFuture<ResponseEntity<Map<String, Object>>> getPositions(@PathVariable String trader, WebRequest request) {
+        Optional<String> tag = versions.tag(SUPPLY_POSITION_TEMPLATE, BORROW_POSITION_TEMPLATE, LENDING_POOL_TEMPLATE, ORACLE_PRICE_TEMPLATE)
+                .map(t -> t + "." + partyTag(trader) + "." + projectionBucket());
+        if (notModified(request, tag)) return null;
+        // Positions, pool index and oracle quotes are fetched concurrently; index and quotes are shared by the whole batch
+        CompletableFuture<List<Map<String, Object>>> supply = CompletableFuture.supplyAsync(
+                () -> repo.getSupplyPositions(trader).stream().map(this::mapSupplyPosition).toList(), taskExecutor);
+        CompletableFuture<List<Map<String, Object>>> borrowRows = CompletableFuture.supplyAsync(
+                () -> repo.getBorrowPositions(trader), taskExecutor);
+        CompletableFuture<Double> accIndex = CompletableFuture.supplyAsync(
+                () -> interestIndex.now().map(InterestIndexProjector.ProjectedPool::index).orElse(0.0), taskExecutor);
+        CompletableFuture<Map<String, OraclePriceCache.Quote>> quotes = CompletableFuture.supplyAsync(oracleCache::all, taskExecutor);
+        return CompletableFuture.allOf(supply, borrowRows, accIndex, quotes)
+                .thenApply(ignored -> {
+                    List<Map<String, Object>> borrow = borrowRows.join().stream()
+                            .map(row -> mapBorrowPosition(row, accIndex.join(), quotes.join()))
+                            .toList();
+                    return ResponseEntity.ok(Map.<String, Object>of("supply", supply.join(), "borrow", borrow));
+                })
+                .exceptionally(e -> {
+                    logger.error("Failed to get positions", e);
+                    return ResponseEntity.internalServerError().body(Map.<String, Object>of("error", String.valueOf(unwrap(e).getMessage())));
+                });
     }
 
     @GetMapping("/positions/me")
-    public ResponseEntity<Map<String, Object>> getMyPositions() {
-        return getPositions(authenticatedPartyProvider.getPartyOrFail());
+    public CompletableFuture<ResponseEntity<Map<String, Object>>> getMyPositions(WebRequest request) {
+        return getPositions(authenticatedPartyProvider.getPartyOrFail(), request);
     }
 
     /**
      * GET /api/oracle → Current CC/USD oracle price
      */
     @GetMapping("/oracle")
-    public ResponseEntity<Object> getOraclePrice() {
+    public ResponseEntity<MarketData.OraclePrices> getOraclePrice(WebRequest request) {
+        if (notModified(request, versions.tag(ORACLE_PRICE_TEMPLATE))) return null;
         try {
-            List<Map<String, Object>> prices = repo.getAllOraclePrices();
-            Optional<Map<String, Object>> cc = repo.getOraclePrice("CC");
-            double ccPrice = cc
-                    .map(row -> (Map<String, Object>) row.get("payload"))
-                    .map(payload -> parseDouble(payload.get("price")))
+            List<MarketData.OracleRow> prices = repo.getAllOraclePrices().stream().map(MarketData.OracleRow::of).toList();
+            double ccPrice = prices.stream()
+                    .filter(row -> "CC".equals(row.payload().asset()))
+                    .mapToDouble(row -> row.payload().price())
+                    .findFirst()
                     .orElse(0.0);
-            return ResponseEntity.ok(Map.<String, Object>of("ccPrice", ccPrice, "prices", prices));
+            return ResponseEntity.ok().varyBy(HttpHeaders.ACCEPT).body(new MarketData.OraclePrices(ccPrice, prices));
         } catch (Exception e) {
             logger.error("Failed to get oracle price", e);
             return ResponseEntity.internalServerError().build();
         }
     }
 
+    /**
+     * GET /api/oracle/history/:asset?windowSeconds=3600&includeSamples=false
+     * → TWAP, min/max, last and realized volatility of the asset's oracle price over the window
+     */
+    @GetMapping("/oracle/history/{asset}")
+    public ResponseEntity<Map<String, Object>> getOracleHistory(
+            @PathVariable String asset,
+            @RequestParam(defaultValue = "3600") long windowSeconds,
+            @RequestParam(defaultValue = "false") boolean includeSamples
+    ) {
+        if (windowSeconds <= 0) {
+            return ResponseEntity.badRequest().body(Map.<String, Object>of("error", "windowSeconds must be positive"));
+        }
+        long to = System.currentTimeMillis();
+        long from = to - windowSeconds * 1000;
+        return priceHistory.stats(asset, from, to)
+                .map(stats -> {
+                    Map<String, Object> out = new LinkedHashMap<>();
+                    out.put("asset", asset);
+                    out.put("from", Instant.ofEpochMilli(from).toString());
+                    out.put("to", Instant.ofEpochMilli(to).toString());
+                    out.put("samples", stats.samples());
+                    out.put("twap", stats.twap());
+                    out.put("min", stats.min());
+                    out.put("max", stats.max());
+                    out.put("last", stats.last());
+                    out.put("realizedVolatility", stats.realizedVolatility());
+                    if (includeSamples) {
+                        out.put("history", priceHistory.samples(asset, from, to).stream()
+                                .map(sample -> Map.<String, Object>of(
+                                        "timestamp", Instant.ofEpochMilli((long) sample[0]).toString(),
+                                        "price", sample[1]))
+                                .toList());
+                    }
+                    return ResponseEntity.ok(out);
+                })
+                .orElse(ResponseEntity.status(404).body(Map.<String, Object>of("error", "No price history for " + asset)));
+    }
+
+    // ── Risk Endpoints ─────────────────────────────────────
+
+    /**
+     * POST /api/risk/stress → Liquidations under hypothetical price shocks (operator only)
+     * Body: { asset?, shocks: [-0.1, -0.2, ...], topN? }
+     */
+    @PostMapping("/risk/stress")
+    public ResponseEntity<Map<String, Object>> stressTest(@RequestBody Map<String, Object> body) {
+        ResponseEntity<Map<String, Object>> guard = requireOperatorSession("Stress test");
+        if (guard != null) {
+            return guard;
+        }
+
+        final String asset = String.valueOf(body.getOrDefault("asset", "CC"));
+        final int topN = (int) parseDouble(body.getOrDefault("topN", 10));
+        if (!(body.get("shocks") instanceof List<?> rawShocks) || rawShocks.isEmpty()) {
+            return ResponseEntity.badRequest().body(Map.<String, Object>of("error", "shocks must be a non-empty list"));
+        }
+        List<Double> shocks = rawShocks.stream().map(this::parseDouble).toList();
+        if (shocks.stream().anyMatch(shock -> shock <= -1.0)) {
+            return ResponseEntity.badRequest().body(Map.<String, Object>of("error", "shocks must be greater than -1"));
+        }
+
+        try {
+            return ResponseEntity.ok(priceShockSimulator.simulate(asset, shocks, topN));
+        } catch (NoSuchElementException e) {
+            return ResponseEntity.badRequest().body(Map.<String, Object>of("error", e.getMessage()));
+        } catch (Exception e) {
+            logger.error("Stress test failed", e);
+            return ResponseEntity.internalServerError().body(Map.<String, Object>of("error", String.valueOf(e.getMessage())));
+        }
+    }
+
+    /**
+     * Conditional GET: true if the client's If-None-Match matches {@code tag}, in which case the response
+     * is already a 304 and the handler returns without querying. Otherwise the ETag is set on the response.
+     */
+    private boolean notModified(WebRequest request, Optional<String> tag) {
+        return tag.isPresent() && request.checkNotModified(tag.get());
+    }
+
+    /**
+     * Responses with values projected to the current time (interest, health factors) are re-tagged every
+     * projectedEtagSeconds even when no contract changed.
+     */
+    private long projectionBucket() {
+        return System.currentTimeMillis() / (Math.max(1, config.getHttp().getProjectedEtagSeconds()) * 1000);
+    }
+
+    private static String partyTag(String party) {
+        return Integer.toHexString(party.hashCode());
+    }
+
+    /**
+     * One order of a create request, with the same defaults as POST /orders.
+     */
+    private record OrderRequest(String baseAsset, String quoteAsset, String side, double price, double quantity) {
+
+        static OrderRequest parse(Map<?, ?> body) {
+            return new OrderRequest(
+                    String.valueOf(Objects.requireNonNullElse(body.get("baseAsset"), "CC")),
+                    String.valueOf(Objects.requireNonNullElse(body.get("quoteAsset"), "USDC")),
+                    normalizeSide(String.valueOf(Objects.requireNonNullElse(body.get("side"), "Buy"))),
+                    parseNumber(body.get("price")),
+                    parseNumber(body.get("quantity"))
+            );
+        }
+
+        Optional<String> validate() {
+            if (!(price > 0)) return Optional.of("Price must be positive");
+            if (!(quantity > 0)) return Optional.of("Quantity must be positive");
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * Contract id given in the request, or the cached OraclePrice of {@code asset} looked up on the task executor.
+     */
+    private CompletableFuture<Optional<String>> oracleContractId(Object requested, String asset) {
+        if (requested != null && !String.valueOf(requested).isBlank()) {
+            return CompletableFuture.completedFuture(Optional.of(String.valueOf(requested)));
+        }
+        return CompletableFuture.supplyAsync(
+                () -> oracleCache.get(asset).map(OraclePriceCache.Quote::contractId), taskExecutor);
+    }
+
+    private UmbraLedgerClient.Exercise cancelOrderExercise(String orderCid) {
+        return new UmbraLedgerClient.Exercise(orderCid, "Umbra.DarkPool", "SpotOrder", "CancelOrder", unitVal());
+    }
+
+    private UmbraLedgerClient.Exercise createOrderExercise(String operatorCid, String trader, OrderRequest order) {
+        return new UmbraLedgerClient.Exercise(
+                operatorCid,
+                "Umbra.DarkPool", "DarkPoolOperator",
+                "CreateOrder",
+                recordVal(
+                        field("trader", partyVal(trader)),
+                        field("baseAsset", textVal(order.baseAsset())),
+                        field("quoteAsset", textVal(order.quoteAsset())),
+                        field("side", enumVal(order.side())),
+                        field("price", numericVal(order.price())),
+                        field("quantity", numericVal(order.quantity()))
+                )
+        );
+    }
+
     private double parseDouble(Object value) {
+        return parseNumber(value);
+    }
+
+    private static double parseNumber(Object value) {
         if (value == null) return 0.0;
         try {
             return Double.parseDouble(String.valueOf(value));
@@ -446,7 +854,7 @@ public class UmbraController {
         return authenticatedPartyProvider.getParty().orElse(null);
     }
 
-    private String normalizeSide(String side) {
+    private static String normalizeSide(String side) {
         if (side == null) return "Buy";
         return switch (side.trim().toLowerCase(Locale.ROOT)) {
             case "sell" -> "Sell";
@@ -473,6 +881,9 @@ public class UmbraController {
 
     private ResponseEntity<Map<String, Object>> mapLedgerWriteFailure(String action, Throwable error) {
         Throwable root = unwrap(error);
+        if (root instanceof NoSuchElementException) {
+            return ResponseEntity.badRequest().body(Map.<String, Object>of("error", root.getMessage()));
+        }
         if (root instanceof StatusRuntimeException sre && sre.getStatus().getCode() == Status.Code.PERMISSION_DENIED) {
             String authenticatedParty = authenticatedPartyProvider.getParty().orElse("");
             String operatorParty = config.getOperatorParty() == null ? "" : config.getOperatorParty();
@@ -497,24 +908,6 @@ public class UmbraController {
         return current;
     }
 
-    private double computeBorrowApy(Map<String, Object> payload, double utilization) {
-        Object rm = payload.get("rateModel");
-        if (!(rm instanceof Map<?, ?> rateModel)) {
-            return 0.0;
-        }
-        double baseRate = parseDouble(rateModel.get("baseRate"));
-        double multiplier = parseDouble(rateModel.get("multiplier"));
-        double jumpMultiplier = parseDouble(rateModel.get("jumpMultiplier"));
-        double kink = parseDouble(rateModel.get("kink"));
-
-        if (utilization <= kink) {
-            return baseRate + utilization * multiplier;
-        }
-        double normalRate = baseRate + kink * multiplier;
-        double excess = utilization - kink;
-        return normalRate + excess * jumpMultiplier;
-    }
-
     private Map<String, Object> mapOrder(Map<String, Object> row) {
         @SuppressWarnings("unchecked")
         Map<String, Object> payload = (Map<String, Object>) row.get("payload");
@@ -530,19 +923,6 @@ public class UmbraController {
         );
     }
 
-    private Map<String, Object> mapTrade(Map<String, Object> row) {
-        @SuppressWarnings("unchecked")
-        Map<String, Object> payload = (Map<String, Object>) row.get("payload");
-        return Map.<String, Object>of(
-                "id", String.valueOf(row.get("contractId")),
-                "price", parseDouble(payload.get("price")),
-                "quantity", parseDouble(payload.get("quantity")),
-                "executedAt", String.valueOf(payload.getOrDefault("executedAt", "")),
-                "buyer", String.valueOf(payload.getOrDefault("buyer", "")),
-                "seller", String.valueOf(payload.getOrDefault("seller", ""))
-        );
-    }
-
     private Map<String, Object> mapSupplyPosition(Map<String, Object> row) {
         @SuppressWarnings("unchecked")
         Map<String, Object> payload = (Map<String, Object>) row.get("payload");
@@ -554,15 +934,38 @@ public class UmbraController {
         );
     }
 
-    private Map<String, Object> mapBorrowPosition(Map<String, Object> row) {
+    /**
+     * Borrow position with debt and health evaluated the way {@link LiquidationMonitor} does, at the
+     * projected pool index and cached oracle prices. Valuation fields are omitted if a price is missing.
+     */
+    private Map<String, Object> mapBorrowPosition(Map<String, Object> row, double accIndex, Map<String, OraclePriceCache.Quote> quotes) {
         @SuppressWarnings("unchecked")
         Map<String, Object> payload = (Map<String, Object>) row.get("payload");
-        return Map.<String, Object>of(
-                "id", String.valueOf(row.get("contractId")),
-                "type", "borrow",
-                "amount", parseDouble(payload.get("borrowAmount")),
-                "collateral", parseDouble(payload.get("collateralAmount")),
-                "asset", String.valueOf(payload.getOrDefault("borrowAsset", "USDC"))
-        );
+        LiquidationPriceIndex.Position position = LiquidationPriceIndex.parse(String.valueOf(row.get("contractId")), payload);
+        double currentDebt = accIndex > 0 && position.entryIndex() > 0
+                ? position.borrowAmount() * (accIndex / position.entryIndex())
+                : position.borrowAmount();
+
+        Map<String, Object> out = new LinkedHashMap<>();
+        out.put("id", position.contractId());
+        out.put("type", "borrow");
+        out.put("amount", position.borrowAmount());
+        out.put("currentDebt", currentDebt);
+        out.put("collateral", position.collateralAmount());
+        out.put("asset", position.borrowAsset());
+        out.put("collateralAsset", position.collateralAsset());
+
+        OraclePriceCache.Quote borrowQuote = quotes.get(position.borrowAsset());
+        OraclePriceCache.Quote collateralQuote = quotes.get(position.collateralAsset());
+        if (accIndex > 0 && borrowQuote != null && collateralQuote != null) {
+            double borrowPrice = borrowQuote.price();
+            double collateralPrice = collateralQuote.price();
+            out.put("debtValue", currentDebt * borrowPrice);
+            out.put("collateralValue", position.collateralAmount() * collateralPrice);
+            out.put("healthFactor", position.healthFactor(accIndex, borrowPrice, collateralPrice));
+            // Collateral price at which the health factor reaches 1.0
+            out.put("liquidationPrice", position.k() * accIndex * borrowPrice);
+        }
+        return out;
     }
 }
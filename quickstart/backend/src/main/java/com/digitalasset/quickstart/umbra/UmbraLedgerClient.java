@@ -2,20 +2,30 @@ package com.digitalasset.quickstart.umbra;
 
 import com.daml.ledger.api.v2.*;
 import com.digitalasset.quickstart.config.LedgerConfig;
+import com.digitalasset.quickstart.umbra.LedgerSubmissionScheduler.Lane;
 import com.digitalasset.quickstart.security.TokenProvider;
 import com.google.common.util.concurrent.FutureCallback;
 import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.ListenableFuture;
 import com.google.common.util.concurrent.MoreExecutors;
+import com.google.protobuf.Duration;
 import io.grpc.*;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.stereotype.Component;
 
 import javax.annotation.Nonnull;
+import java.nio.charset.StandardCharsets;
 import java.util.*;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.function.Supplier;
 
 /**
  * Low-level ledger client for Umbra contracts.
@@ -26,14 +36,33 @@ public class UmbraLedgerClient {
 
     private static final Logger logger = LoggerFactory.getLogger(UmbraLedgerClient.class);
 
+    // Canton error codes signalling that the target contract was consumed or locked by a concurrent transaction
+    private static final List<String> CONTENTION_ERROR_CODES = List.of(
+            "CONTRACT_NOT_FOUND",
+            "LOCAL_VERDICT_LOCKED_CONTRACTS",
+            "LOCAL_VERDICT_INACTIVE_CONTRACTS",
+            "INCONSISTENT_CONTRACTS"
+    );
+
+    private final ManagedChannel channel;
     private final CommandServiceGrpc.CommandServiceFutureStub commands;
     private final CommandSubmissionServiceGrpc.CommandSubmissionServiceFutureStub submission;
     private final UmbraConfig umbraConfig;
+    private final LedgerSubmissionScheduler scheduler;
+    private final Executor taskExecutor;
     private final String appId;
 
     @Autowired
-    public UmbraLedgerClient(LedgerConfig ledgerConfig, Optional<TokenProvider> tokenProvider, UmbraConfig umbraConfig) {
+    public UmbraLedgerClient(
+            LedgerConfig ledgerConfig,
+            Optional<TokenProvider> tokenProvider,
+            UmbraConfig umbraConfig,
+            LedgerSubmissionScheduler scheduler,
+            @Qualifier("applicationTaskExecutor") Executor taskExecutor
+    ) {
         this.umbraConfig = umbraConfig;
+        this.scheduler = scheduler;
+        this.taskExecutor = taskExecutor;
         this.appId = ledgerConfig.getApplicationId();
 
         ManagedChannelBuilder<?> builder = ManagedChannelBuilder
@@ -42,12 +71,19 @@ public class UmbraLedgerClient {
         if (tokenProvider.isPresent()) {
             builder.intercept(new AuthInterceptor(tokenProvider.get()));
         }
-        ManagedChannel channel = builder.build();
+        channel = builder.build();
         commands = CommandServiceGrpc.newFutureStub(channel);
         submission = CommandSubmissionServiceGrpc.newFutureStub(channel);
         logger.info("UmbraLedgerClient initialized");
     }
 
+    /**
+     * Authenticated channel to the participant, shared with the ledger stream projection.
+     */
+    Channel channel() {
+        return channel;
+    }
+
     /**
      * Build a Daml Identifier for an Umbra template.
      */
@@ -60,9 +96,59 @@ public class UmbraLedgerClient {
     }
 
     /**
-     * Exercise a choice on a contract and wait for the transaction result.
+     * Build a Daml Identifier from a qualified template name such as {@code Umbra.Lending:LendingPool}.
+     */
+    public ValueOuterClass.Identifier templateId(String qualifiedName) {
+        String[] parts = qualifiedName.split(":", 2);
+        return templateId(parts[0], parts[1]);
+    }
+
+    /**
+     * Command id derived from a business intent (e.g. the contract ids of a fill pair).
+     * Resubmitting the same intent within the deduplication period is rejected by the
+     * participant as a duplicate instead of being applied twice.
+     */
+    public static String commandId(String intent, String... keys) {
+        String key = String.join("|", keys);
+        return "umbra-" + intent + "-" + UUID.nameUUIDFromBytes(key.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Fresh command id for writes without a natural idempotency key. Retries of one call still reuse it.
+     */
+    public static String randomCommandId() {
+        return "umbra-" + UUID.randomUUID();
+    }
+
+    /**
+     * True if the ledger rejected a submission because a command with the same id was already accepted.
      */
-    public CompletableFuture<TransactionOuterClass.Transaction> exerciseChoice(
+    public static boolean isDuplicateCommand(Throwable error) {
+        return unwrap(error) instanceof StatusRuntimeException sre
+                && sre.getStatus().getCode() == Status.Code.ALREADY_EXISTS;
+    }
+
+    /**
+     * True if the ledger rejected a submission because an input contract was already archived or locked
+     * by a concurrent transaction.
+     */
+    public static boolean isContentionError(Throwable error) {
+        return isContention(unwrap(error));
+    }
+
+    /**
+     * True if the submission failed with contention on {@code contractId} specifically, as opposed to
+     * another input of the same transaction.
+     */
+    public static boolean isContentionOn(Throwable error, String contractId) {
+        Throwable root = unwrap(error);
+        return isContention(root) && describe(root).contains(contractId);
+    }
+
+    /**
+     * Exercise a choice on a contract and wait for its completion.
+     */
+    public CompletableFuture<WriteResult> exerciseChoice(
             String contractId,
             String moduleName,
             String entityName,
@@ -70,38 +156,77 @@ public class UmbraLedgerClient {
             ValueOuterClass.Value choiceArg,
             String actAs
     ) {
-        String commandId = "umbra-" + UUID.randomUUID();
-        CommandsOuterClass.Command cmd = CommandsOuterClass.Command.newBuilder()
-                .setExercise(CommandsOuterClass.ExerciseCommand.newBuilder()
-                        .setTemplateId(templateId(moduleName, entityName))
-                        .setContractId(contractId)
-                        .setChoice(choiceName)
-                        .setChoiceArgument(choiceArg)
-                        .build())
-                .build();
-
-        CommandsOuterClass.Commands cmds = CommandsOuterClass.Commands.newBuilder()
-                .setCommandId(commandId)
-                .addActAs(actAs)
-                .addReadAs(actAs)
-                .addCommands(cmd)
-                .build();
+        return exerciseChoice(Lane.USER, randomCommandId(), contractId, null, moduleName, entityName, choiceName, choiceArg, List.of(actAs), ResultShape.COMPLETION);
+    }
 
-        var eventFormat = TransactionFilterOuterClass.EventFormat.newBuilder()
-                .putFiltersByParty(actAs, TransactionFilterOuterClass.Filters.newBuilder().build())
-                .build();
-        var txFormat = TransactionFilterOuterClass.TransactionFormat.newBuilder()
-                .setEventFormat(eventFormat)
-                .setTransactionShape(TransactionFilterOuterClass.TransactionShape.TRANSACTION_SHAPE_LEDGER_EFFECTS)
-                .build();
+    /**
+     * Exercise a choice with multiple actAs parties and wait for its completion.
+     */
+    public CompletableFuture<WriteResult> exerciseChoiceMulti(
+            String contractId,
+            String moduleName,
+            String entityName,
+            String choiceName,
+            ValueOuterClass.Value choiceArg,
+            List<String> actAs
+    ) {
+        return exerciseChoice(Lane.USER, randomCommandId(), contractId, null, moduleName, entityName, choiceName, choiceArg, actAs, ResultShape.COMPLETION);
+    }
 
-        var request = CommandServiceOuterClass.SubmitAndWaitForTransactionRequest.newBuilder()
-                .setCommands(cmds)
-                .setTransactionFormat(txFormat)
-                .build();
+    /**
+     * Exercise a choice under a caller-supplied command id, retrying transient failures with jittered backoff.
+     * If {@code contractResolver} is given, contention on the target contract (consumed or locked by a
+     * concurrent transaction) re-resolves the current contract id and resubmits under the same command id.
+     * Each attempt waits for capacity in the given submission lane. {@code shape} controls how much of the
+     * resulting transaction the participant sends back.
+     */
+    public CompletableFuture<WriteResult> exerciseChoice(
+            Lane lane,
+            String commandId,
+            String contractId,
+            Supplier<Optional<String>> contractResolver,
+            String moduleName,
+            String entityName,
+            String choiceName,
+            ValueOuterClass.Value choiceArg,
+            List<String> actAs,
+            ResultShape shape
+    ) {
+        CompletableFuture<WriteResult> result = new CompletableFuture<>();
+        attempt(commandId, contractId, contractResolver, 1, result,
+                cid -> scheduler.submit(lane, () -> submitAndWait(
+                        commandId,
+                        actAs,
+                        List.of(exerciseCommand(cid, moduleName, entityName, choiceName, choiceArg)),
+                        shape
+                )));
+        return result;
+    }
 
-        return toCompletableFuture(commands.submitAndWaitForTransaction(request))
-                .thenApply(CommandServiceOuterClass.SubmitAndWaitForTransactionResponse::getTransaction);
+    /**
+     * Exercise several choices in one atomic transaction under a caller-supplied command id, with the same
+     * retry and lane behaviour as the single-choice variant. On contention, {@code resolver} (if given)
+     * returns the exercises re-targeted at the current contract ids.
+     */
+    public CompletableFuture<WriteResult> exerciseChoices(
+            Lane lane,
+            String commandId,
+            List<Exercise> exercises,
+            Supplier<Optional<List<Exercise>>> resolver,
+            List<String> actAs,
+            ResultShape shape
+    ) {
+        CompletableFuture<WriteResult> result = new CompletableFuture<>();
+        attempt(commandId, exercises, resolver, 1, result,
+                batch -> scheduler.submit(lane, () -> submitAndWait(
+                        commandId,
+                        actAs,
+                        batch.stream()
+                                .map(e -> exerciseCommand(e.contractId(), e.moduleName(), e.entityName(), e.choiceName(), e.choiceArg()))
+                                .toList(),
+                        shape
+                )));
+        return result;
     }
 
     /**
@@ -121,33 +246,21 @@ public class UmbraLedgerClient {
                         .build())
                 .build();
 
-        CommandsOuterClass.Commands cmds = CommandsOuterClass.Commands.newBuilder()
-                .setCommandId(commandId)
-                .addActAs(actAs)
-                .addReadAs(actAs)
-                .addCommands(cmd)
-                .build();
-
         var request = CommandSubmissionServiceOuterClass.SubmitRequest.newBuilder()
-                .setCommands(cmds)
+                .setCommands(commands(commandId, List.of(actAs), List.of(cmd)))
                 .build();
 
-        return toCompletableFuture(submission.submit(request)).thenApply(r -> null);
+        return scheduler.submit(Lane.USER, () -> toCompletableFuture(submission.submit(request))).thenApply(r -> null);
     }
 
-    /**
-     * Exercise a choice with multiple actAs parties.
-     */
-    public CompletableFuture<TransactionOuterClass.Transaction> exerciseChoiceMulti(
+    private CommandsOuterClass.Command exerciseCommand(
             String contractId,
             String moduleName,
             String entityName,
             String choiceName,
-            ValueOuterClass.Value choiceArg,
-            List<String> actAs
+            ValueOuterClass.Value choiceArg
     ) {
-        String commandId = "umbra-" + UUID.randomUUID();
-        CommandsOuterClass.Command cmd = CommandsOuterClass.Command.newBuilder()
+        return CommandsOuterClass.Command.newBuilder()
                 .setExercise(CommandsOuterClass.ExerciseCommand.newBuilder()
                         .setTemplateId(templateId(moduleName, entityName))
                         .setContractId(contractId)
@@ -155,29 +268,160 @@ public class UmbraLedgerClient {
                         .setChoiceArgument(choiceArg)
                         .build())
                 .build();
+    }
 
-        CommandsOuterClass.Commands.Builder cmdsBuilder = CommandsOuterClass.Commands.newBuilder()
-                .setCommandId(commandId)
-                .addAllActAs(actAs)
-                .addAllReadAs(actAs)
-                .addCommands(cmd);
+    private CompletableFuture<WriteResult> submitAndWait(
+            String commandId,
+            List<String> actAs,
+            List<CommandsOuterClass.Command> cmds,
+            ResultShape shape
+    ) {
+        CommandsOuterClass.Commands commandsMsg = commands(commandId, actAs, cmds);
+        if (!shape.transaction()) {
+            var request = CommandServiceOuterClass.SubmitAndWaitRequest.newBuilder()
+                    .setCommands(commandsMsg)
+                    .build();
+            return toCompletableFuture(commands.submitAndWait(request))
+                    .thenApply(r -> new WriteResult(r.getUpdateId(), r.getCompletionOffset(), Map.of()));
+        }
 
+        var filters = TransactionFilterOuterClass.Filters.newBuilder();
+        for (String template : shape.templates()) {
+            filters.addCumulative(TransactionFilterOuterClass.CumulativeFilter.newBuilder()
+                    .setTemplateFilter(TransactionFilterOuterClass.TemplateFilter.newBuilder()
+                            .setTemplateId(templateId(template))
+                            .build())
+                    .build());
+        }
         var eventFormat = TransactionFilterOuterClass.EventFormat.newBuilder();
         for (String party : actAs) {
-            eventFormat.putFiltersByParty(party, TransactionFilterOuterClass.Filters.newBuilder().build());
+            eventFormat.putFiltersByParty(party, filters.build());
         }
         var txFormat = TransactionFilterOuterClass.TransactionFormat.newBuilder()
                 .setEventFormat(eventFormat.build())
-                .setTransactionShape(TransactionFilterOuterClass.TransactionShape.TRANSACTION_SHAPE_LEDGER_EFFECTS)
+                .setTransactionShape(TransactionFilterOuterClass.TransactionShape.TRANSACTION_SHAPE_ACS_DELTA)
                 .build();
 
         var request = CommandServiceOuterClass.SubmitAndWaitForTransactionRequest.newBuilder()
-                .setCommands(cmdsBuilder.build())
+                .setCommands(commandsMsg)
                 .setTransactionFormat(txFormat)
                 .build();
 
         return toCompletableFuture(commands.submitAndWaitForTransaction(request))
-                .thenApply(CommandServiceOuterClass.SubmitAndWaitForTransactionResponse::getTransaction);
+                .thenApply(r -> WriteResult.of(r.getTransaction()));
+    }
+
+    private CommandsOuterClass.Commands commands(String commandId, List<String> actAs, List<CommandsOuterClass.Command> cmds) {
+        CommandsOuterClass.Commands.Builder builder = CommandsOuterClass.Commands.newBuilder()
+                .setCommandId(commandId)
+                .addAllActAs(actAs)
+                .addAllReadAs(actAs)
+                .addAllCommands(cmds);
+        long dedupSeconds = umbraConfig.getLedger().getDeduplicationSeconds();
+        if (dedupSeconds > 0) {
+            builder.setDeduplicationDuration(Duration.newBuilder().setSeconds(dedupSeconds).build());
+        }
+        return builder.build();
+    }
+
+    // ── Retry ──────────────────────────────────────────────
+
+    private <C, T> void attempt(
+            String commandId,
+            C contractId,
+            Supplier<Optional<C>> contractResolver,
+            int attemptNo,
+            CompletableFuture<T> result,
+            Function<C, CompletableFuture<T>> submit
+    ) {
+        CompletableFuture<T> pending;
+        try {
+            pending = submit.apply(contractId);
+        } catch (Exception e) {
+            pending = CompletableFuture.failedFuture(e);
+        }
+        pending.whenComplete((value, error) -> {
+            if (error == null) {
+                result.complete(value);
+                return;
+            }
+            Throwable root = unwrap(error);
+            boolean contention = isContention(root);
+            if (!isRetryable(root, contractResolver != null) || attemptNo >= umbraConfig.getLedger().getMaxAttempts()) {
+                result.completeExceptionally(root);
+                return;
+            }
+            long delay = backoffMillis(umbraConfig.getLedger(), attemptNo);
+            logger.info("Retrying command {} (attempt {}) in {}ms after {}", commandId, attemptNo + 1, delay, describe(root));
+            CompletableFuture.runAsync(() -> {
+                C nextContractId = contractId;
+                if (contention && contractResolver != null) {
+                    Optional<C> resolved = contractResolver.get();
+                    if (resolved.isEmpty()) {
+                        result.completeExceptionally(root);
+                        return;
+                    }
+                    nextContractId = resolved.get();
+                }
+                attempt(commandId, nextContractId, contractResolver, attemptNo + 1, result, submit);
+            }, CompletableFuture.delayedExecutor(delay, TimeUnit.MILLISECONDS, taskExecutor)).exceptionally(t -> {
+                // A failing resolver must fail the command, not leave the caller waiting forever
+                result.completeExceptionally(unwrap(t));
+                return null;
+            });
+        });
+    }
+
+    /**
+     * A failed attempt is retried if the failure is transient, or if it is contention and either the target
+     * can be re-resolved or the contract was only locked (not consumed).
+     */
+    static boolean isRetryable(Throwable root, boolean canResolve) {
+        return isTransient(root) || (isContention(root) && (canResolve || isLocked(root)));
+    }
+
+    /**
+     * Exponential backoff with full jitter, so competing writers don't retry in lockstep.
+     */
+    static long backoffMillis(UmbraConfig.Ledger cfg, int attemptNo) {
+        long ceiling = Math.min(cfg.getRetryMaxDelayMs(), cfg.getRetryBaseDelayMs() << Math.min(attemptNo - 1, 20));
+        return ThreadLocalRandom.current().nextLong(0, ceiling + 1);
+    }
+
+    private static boolean isTransient(Throwable t) {
+        if (!(t instanceof StatusRuntimeException sre)) return false;
+        return switch (sre.getStatus().getCode()) {
+            case UNAVAILABLE, DEADLINE_EXCEEDED, RESOURCE_EXHAUSTED -> true;
+            case ABORTED -> !isContention(t);
+            default -> false;
+        };
+    }
+
+    private static boolean isContention(Throwable t) {
+        String description = describe(t);
+        for (String code : CONTENTION_ERROR_CODES) {
+            if (description.contains(code)) return true;
+        }
+        return false;
+    }
+
+    private static boolean isLocked(Throwable t) {
+        return describe(t).contains("LOCAL_VERDICT_LOCKED_CONTRACTS");
+    }
+
+    private static String describe(Throwable t) {
+        if (t instanceof StatusRuntimeException sre) {
+            return sre.getStatus().getCode() + ": " + sre.getStatus().getDescription();
+        }
+        return String.valueOf(t.getMessage());
+    }
+
+    private static Throwable unwrap(Throwable error) {
+        Throwable current = error;
+        while (current instanceof CompletionException && current.getCause() != null) {
+            current = current.getCause();
+        }
+        return current;
     }
 
     private static <T> CompletableFuture<T> toCompletableFuture(ListenableFuture<T> lf) {
@@ -189,6 +433,58 @@ public class UmbraLedgerClient {
         return cf;
     }
 
+    /**
+     * One exercise of a multi-command submission.
+     */
+    public record Exercise(
+            String contractId,
+            String moduleName,
+            String entityName,
+            String choiceName,
+            ValueOuterClass.Value choiceArg
+    ) {}
+
+    /**
+     * How much of the committed transaction the participant should send back for a write.
+     * Anything beyond {@link #COMPLETION} is returned as an ACS delta (created/archived events only),
+     * optionally restricted to the given template qualified names.
+     */
+    public record ResultShape(boolean transaction, List<String> templates) {
+        /** Update id and completion offset only; no events are serialized. */
+        public static final ResultShape COMPLETION = new ResultShape(false, List.of());
+        /** Created and archived events of every template visible to the submitters. */
+        public static final ResultShape ACS_DELTA = new ResultShape(true, List.of());
+
+        /** Created and archived events of the given templates only. */
+        public static ResultShape created(String... templates) {
+            return new ResultShape(true, List.of(templates));
+        }
+    }
+
+    /**
+     * Outcome of a ledger write: update id, offset and the contract ids created per template
+     * (empty for {@link ResultShape#COMPLETION}).
+     */
+    public record WriteResult(String updateId, long offset, Map<String, List<String>> createdContractIds) {
+
+        static WriteResult of(TransactionOuterClass.Transaction tx) {
+            Map<String, List<String>> created = new HashMap<>();
+            for (EventOuterClass.Event event : tx.getEventsList()) {
+                if (event.hasCreated()) {
+                    ValueOuterClass.Identifier id = event.getCreated().getTemplateId();
+                    created.computeIfAbsent(id.getModuleName() + ":" + id.getEntityName(), k -> new ArrayList<>())
+                            .add(event.getCreated().getContractId());
+                }
+            }
+            return new WriteResult(tx.getUpdateId(), tx.getOffset(), created);
+        }
+
+        public Optional<String> createdContractId(String template) {
+            List<String> ids = createdContractIds.getOrDefault(template, List.of());
+            return ids.isEmpty() ? Optional.empty() : Optional.of(ids.get(0));
+        }
+    }
+
     private static class AuthInterceptor implements ClientInterceptor {
         private static final Metadata.Key<String> AUTH_HEADER = Metadata.Key.of("Authorization", Metadata.ASCII_STRING_MARSHALLER);
         private final TokenProvider tokenProvider;
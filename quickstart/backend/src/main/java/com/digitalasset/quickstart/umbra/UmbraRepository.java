@@ -15,17 +15,26 @@ import static com.digitalasset.quickstart.umbra.UmbraConfig.*;
 /**
  * Repository for querying Umbra contracts from PQS (Postgres Query Store).
  * Returns raw JSON maps — no dependency on generated DAML bindings.
+ * While the in-memory {@link UmbraContractProjection} is live, queries are answered from it instead.
+ * Concurrent identical PQS queries (same SQL and parameters) run once and share the result, which may be
+ * reused for {@code umbra.projection.read-coalesce-ttl-ms} afterwards; returned rows must not be mutated.
  */
 @Repository
 public class UmbraRepository {
 
     private static final Logger logger = LoggerFactory.getLogger(UmbraRepository.class);
     private final JdbcTemplate jdbc;
+    private final UmbraContractProjection projection;
     private final ObjectMapper mapper = new ObjectMapper();
+    private final SingleFlight<Query> reads;
+
+    private record Query(String sql, List<Object> params) {}
 
     @Autowired
-    public UmbraRepository(JdbcTemplate jdbc) {
+    public UmbraRepository(JdbcTemplate jdbc, UmbraContractProjection projection, UmbraConfig config) {
         this.jdbc = jdbc;
+        this.projection = projection;
+        this.reads = new SingleFlight<>(config.getProjection().getReadCoalesceTtlMs());
     }
 
     // ── Dark Pool ──────────────────────────────────────────
@@ -34,14 +43,10 @@ public class UmbraRepository {
      * Returns all active SpotOrders with status "Open".
      */
     public List<Map<String, Object>> getActiveOrders() {
+        if (projection.isLive()) return projection.getActiveOrders();
         String sql = "SELECT contract_id, payload FROM active(?) WHERE payload->>'status' = 'Open'";
         try {
-            return jdbc.query(sql, (rs, i) -> {
-                Map<String, Object> row = new HashMap<>();
-                row.put("contractId", rs.getString("contract_id"));
-                row.put("payload", parseJson(rs.getString("payload")));
-                return row;
-            }, SPOT_ORDER_TEMPLATE);
+            return queryContracts(sql, SPOT_ORDER_TEMPLATE);
         } catch (Exception e) {
             logger.debug("SpotOrder template not yet available in PQS", e);
             return List.of();
@@ -49,14 +54,10 @@ public class UmbraRepository {
     }
 
     public List<Map<String, Object>> getActiveOrdersForTrader(String trader) {
+        if (projection.isLive()) return projection.getActiveOrdersForTrader(trader);
         String sql = "SELECT contract_id, payload FROM active(?) WHERE payload->>'status' = 'Open' AND payload->>'trader' = ?";
         try {
-            return jdbc.query(sql, (rs, i) -> {
-                Map<String, Object> row = new HashMap<>();
-                row.put("contractId", rs.getString("contract_id"));
-                row.put("payload", parseJson(rs.getString("payload")));
-                return row;
-            }, SPOT_ORDER_TEMPLATE, trader);
+            return queryContracts(sql, SPOT_ORDER_TEMPLATE, trader);
         } catch (Exception e) {
             logger.debug("SpotOrder template not yet available in PQS", e);
             return List.of();
@@ -66,14 +67,12 @@ public class UmbraRepository {
     /**
      * Aggregated orderbook: buys and sells grouped by price level, no trader info.
      */
-    public Map<String, Object> getOrderBook() {
+    public MarketData.OrderBook getOrderBook() {
         List<Map<String, Object>> orders = getActiveOrders();
-        List<Map<String, Object>> buys = new ArrayList<>();
-        List<Map<String, Object>> sells = new ArrayList<>();
 
         // Group by side and price
-        Map<String, Double> buyAgg = new TreeMap<>(Comparator.reverseOrder());
-        Map<String, Double> sellAgg = new TreeMap<>();
+        Map<Double, Double> buyAgg = new TreeMap<>(Comparator.reverseOrder());
+        Map<Double, Double> sellAgg = new TreeMap<>();
 
         for (Map<String, Object> order : orders) {
             @SuppressWarnings("unchecked")
@@ -81,42 +80,29 @@ public class UmbraRepository {
             String side = String.valueOf(payload.get("side"));
             double price = Double.parseDouble(String.valueOf(payload.get("price")));
             double qty = Double.parseDouble(String.valueOf(payload.get("quantity")));
-            String priceKey = String.valueOf(price);
 
             if ("Buy".equals(side)) {
-                buyAgg.merge(priceKey, qty, Double::sum);
+                buyAgg.merge(price, qty, Double::sum);
             } else {
-                sellAgg.merge(priceKey, qty, Double::sum);
+                sellAgg.merge(price, qty, Double::sum);
             }
         }
 
-        for (var e : buyAgg.entrySet()) {
-            buys.add(Map.<String, Object>of("price", Double.parseDouble(e.getKey()), "quantity", e.getValue()));
-        }
-        for (var e : sellAgg.entrySet()) {
-            sells.add(Map.<String, Object>of("price", Double.parseDouble(e.getKey()), "quantity", e.getValue()));
-        }
-
-        return Map.<String, Object>of(
-                "buys", buys,
-                "sells", sells,
-                "bids", buys,
-                "asks", sells
-        );
+        List<MarketData.Level> buys = new ArrayList<>(buyAgg.size());
+        List<MarketData.Level> sells = new ArrayList<>(sellAgg.size());
+        buyAgg.forEach((price, qty) -> buys.add(new MarketData.Level(price, qty)));
+        sellAgg.forEach((price, qty) -> sells.add(new MarketData.Level(price, qty)));
+        return new MarketData.OrderBook(buys, sells);
     }
 
     /**
      * Get trade confirms for a specific trader.
      */
     public List<Map<String, Object>> getTradesForTrader(String trader) {
+        if (projection.isLive()) return projection.getTradesForTrader(trader);
         String sql = "SELECT contract_id, payload FROM active(?) WHERE payload->>'buyer' = ? OR payload->>'seller' = ?";
         try {
-            return jdbc.query(sql, (rs, i) -> {
-                Map<String, Object> row = new HashMap<>();
-                row.put("contractId", rs.getString("contract_id"));
-                row.put("payload", parseJson(rs.getString("payload")));
-                return row;
-            }, TRADE_CONFIRM_TEMPLATE, trader, trader);
+            return queryContracts(sql, TRADE_CONFIRM_TEMPLATE, trader, trader);
         } catch (Exception e) {
             logger.debug("TradeConfirm template not yet available in PQS", e);
             return List.of();
@@ -129,14 +115,10 @@ public class UmbraRepository {
      * Get the active LendingPool contract (expects exactly one).
      */
     public Optional<Map<String, Object>> getLendingPool() {
+        if (projection.isLive()) return projection.getLendingPool();
         String sql = "SELECT contract_id, payload FROM active(?) LIMIT 1";
         try {
-            List<Map<String, Object>> results = jdbc.query(sql, (rs, i) -> {
-                Map<String, Object> row = new HashMap<>();
-                row.put("contractId", rs.getString("contract_id"));
-                row.put("payload", parseJson(rs.getString("payload")));
-                return row;
-            }, LENDING_POOL_TEMPLATE);
+            List<Map<String, Object>> results = queryContracts(sql, LENDING_POOL_TEMPLATE);
             return results.isEmpty() ? Optional.empty() : Optional.of(results.get(0));
         } catch (Exception e) {
             logger.debug("LendingPool template not yet available in PQS", e);
@@ -144,18 +126,21 @@ public class UmbraRepository {
         }
     }
 
+    /**
+     * Contract id of the active LendingPool, for re-resolving it after a concurrent write consumed it.
+     */
+    public Optional<String> getLendingPoolContractId() {
+        return getLendingPool().map(pool -> (String) pool.get("contractId"));
+    }
+
     /**
      * Get supply positions for a trader.
      */
     public List<Map<String, Object>> getSupplyPositions(String trader) {
+        if (projection.isLive()) return projection.getSupplyPositions(trader);
         String sql = "SELECT contract_id, payload FROM active(?) WHERE payload->>'supplier' = ?";
         try {
-            return jdbc.query(sql, (rs, i) -> {
-                Map<String, Object> row = new HashMap<>();
-                row.put("contractId", rs.getString("contract_id"));
-                row.put("payload", parseJson(rs.getString("payload")));
-                return row;
-            }, SUPPLY_POSITION_TEMPLATE, trader);
+            return queryContracts(sql, SUPPLY_POSITION_TEMPLATE, trader);
         } catch (Exception e) {
             logger.debug("SupplyPosition template not yet available in PQS", e);
             return List.of();
@@ -166,14 +151,10 @@ public class UmbraRepository {
      * Get borrow positions for a trader.
      */
     public List<Map<String, Object>> getBorrowPositions(String trader) {
+        if (projection.isLive()) return projection.getBorrowPositions(trader);
         String sql = "SELECT contract_id, payload FROM active(?) WHERE payload->>'borrower' = ?";
         try {
-            return jdbc.query(sql, (rs, i) -> {
-                Map<String, Object> row = new HashMap<>();
-                row.put("contractId", rs.getString("contract_id"));
-                row.put("payload", parseJson(rs.getString("payload")));
-                return row;
-            }, BORROW_POSITION_TEMPLATE, trader);
+            return queryContracts(sql, BORROW_POSITION_TEMPLATE, trader);
         } catch (Exception e) {
             logger.debug("BorrowPosition template not yet available in PQS", e);
             return List.of();
@@ -184,14 +165,10 @@ public class UmbraRepository {
      * Get all borrow positions (for liquidation monitoring).
      */
     public List<Map<String, Object>> getAllBorrowPositions() {
+        if (projection.isLive()) return projection.getAllBorrowPositions();
         String sql = "SELECT contract_id, payload FROM active(?)";
         try {
-            return jdbc.query(sql, (rs, i) -> {
-                Map<String, Object> row = new HashMap<>();
-                row.put("contractId", rs.getString("contract_id"));
-                row.put("payload", parseJson(rs.getString("payload")));
-                return row;
-            }, BORROW_POSITION_TEMPLATE);
+            return queryContracts(sql, BORROW_POSITION_TEMPLATE);
         } catch (Exception e) {
             logger.debug("BorrowPosition template not yet available in PQS", e);
             return List.of();
@@ -204,14 +181,10 @@ public class UmbraRepository {
      * Get the current oracle price for an asset.
      */
     public Optional<Map<String, Object>> getOraclePrice(String asset) {
+        if (projection.isLive()) return projection.getOraclePrice(asset);
         String sql = "SELECT contract_id, payload FROM active(?) WHERE payload->>'asset' = ?";
         try {
-            List<Map<String, Object>> results = jdbc.query(sql, (rs, i) -> {
-                Map<String, Object> row = new HashMap<>();
-                row.put("contractId", rs.getString("contract_id"));
-                row.put("payload", parseJson(rs.getString("payload")));
-                return row;
-            }, ORACLE_PRICE_TEMPLATE, asset);
+            List<Map<String, Object>> results = queryContracts(sql, ORACLE_PRICE_TEMPLATE, asset);
             return results.isEmpty() ? Optional.empty() : Optional.of(results.get(0));
         } catch (Exception e) {
             logger.debug("OraclePrice template not yet available in PQS", e);
@@ -223,14 +196,10 @@ public class UmbraRepository {
      * Get all oracle prices.
      */
     public List<Map<String, Object>> getAllOraclePrices() {
+        if (projection.isLive()) return projection.getAllOraclePrices();
         String sql = "SELECT contract_id, payload FROM active(?)";
         try {
-            return jdbc.query(sql, (rs, i) -> {
-                Map<String, Object> row = new HashMap<>();
-                row.put("contractId", rs.getString("contract_id"));
-                row.put("payload", parseJson(rs.getString("payload")));
-                return row;
-            }, ORACLE_PRICE_TEMPLATE);
+            return queryContracts(sql, ORACLE_PRICE_TEMPLATE);
         } catch (Exception e) {
             logger.debug("OraclePrice template not yet available in PQS", e);
             return List.of();
@@ -243,14 +212,10 @@ public class UmbraRepository {
      * Get the DarkPoolOperator contract.
      */
     public Optional<Map<String, Object>> getDarkPoolOperator() {
+        if (projection.isLive()) return projection.getDarkPoolOperator();
         String sql = "SELECT contract_id, payload FROM active(?) LIMIT 1";
         try {
-            List<Map<String, Object>> results = jdbc.query(sql, (rs, i) -> {
-                Map<String, Object> row = new HashMap<>();
-                row.put("contractId", rs.getString("contract_id"));
-                row.put("payload", parseJson(rs.getString("payload")));
-                return row;
-            }, DARK_POOL_OPERATOR_TEMPLATE);
+            List<Map<String, Object>> results = queryContracts(sql, DARK_POOL_OPERATOR_TEMPLATE);
             return results.isEmpty() ? Optional.empty() : Optional.of(results.get(0));
         } catch (Exception e) {
             logger.debug("DarkPoolOperator template not yet available in PQS", e);
@@ -258,6 +223,33 @@ public class UmbraRepository {
         }
     }
 
+    // ── Watermark ──────────────────────────────────────────
+
+    /**
+     * Ledger offset PQS has ingested up to. Changes whenever any contract visible to PQS changes.
+     */
+    public Optional<String> getPqsOffset() {
+        try {
+            String sql = "SELECT \"offset\"::text FROM __watermark LIMIT 1";
+            return Optional.ofNullable(reads.get(new Query(sql, List.of()), () -> jdbc.queryForObject(sql, String.class)));
+        } catch (Exception e) {
+            logger.debug("PQS watermark not available", e);
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * Rows of {@code contractId}/{@code payload}. Identical concurrent queries share one execution.
+     */
+    private List<Map<String, Object>> queryContracts(String sql, Object... params) {
+        return reads.get(new Query(sql, List.of(params)), () -> jdbc.query(sql, (rs, i) -> {
+            Map<String, Object> row = new HashMap<>();
+            row.put("contractId", rs.getString("contract_id"));
+            row.put("payload", parseJson(rs.getString("payload")));
+            return row;
+        }, params));
+    }
+
     @SuppressWarnings("unchecked")
     private Map<String, Object> parseJson(String json) {
         try {
@@ -0,0 +1,96 @@
+package com.digitalasset.quickstart.umbra;
+
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class InterestIndexProjectorTest {
+
+    private static final Instant LAST_UPDATE = Instant.parse("2026-01-15T12:00:00Z");
+    private static final long SECONDS_PER_YEAR = 31_536_000L;
+
+    private static InterestIndexProjector.PoolState pool(String totalSupply, String totalBorrows, String index) {
+        return InterestIndexProjector.parse("pool-1", Map.of(
+                "asset", "USDC",
+                "totalSupply", totalSupply,
+                "totalBorrows", totalBorrows,
+                "accumulatedIndex", index,
+                "lastUpdateTime", LAST_UPDATE.toString(),
+                "rateModel", Map.of("baseRate", "0.02", "multiplier", "0.1", "jumpMultiplier", "1.0", "kink", "0.8")
+        ));
+    }
+
+    private static void assertDecimal(String expected, BigDecimal actual) {
+        assertEquals(0, new BigDecimal(expected).compareTo(actual), () -> "expected " + expected + " but was " + actual);
+    }
+
+    @Test
+    void parsesLedgerPayload() {
+        InterestIndexProjector.PoolState state = pool("1000.0", "500.0", "1.0");
+        assertEquals("USDC", state.asset());
+        assertEquals(LAST_UPDATE, state.lastUpdateTime());
+        assertDecimal("0.8", state.kink());
+        assertDecimal("1.0", state.jumpMultiplier());
+    }
+
+    @Test
+    void belowKinkAccruesAtLinearRate() {
+        // utilization 0.5 -> rate 0.02 + 0.5 * 0.1 = 0.07 for a full year
+        InterestIndexProjector.ProjectedPool p = InterestIndexProjector.project(
+                pool("1000.0", "500.0", "1.0"), LAST_UPDATE.plusSeconds(SECONDS_PER_YEAR));
+        assertDecimal("1.07", p.accumulatedIndex());
+        assertDecimal("535.0", p.totalBorrows());
+        assertEquals(0.535, p.utilization(), 1e-12);
+        assertEquals(0.02 + 0.535 * 0.1, p.borrowApy(), 1e-12);
+        assertEquals(p.borrowApy() * 0.535 * 0.9, p.supplyApy(), 1e-12);
+    }
+
+    @Test
+    void aboveKinkAddsJumpRate() {
+        // utilization 0.9 -> 0.02 + 0.8 * 0.1 + 0.1 * 1.0 = 0.2, half a year -> factor 0.1
+        InterestIndexProjector.ProjectedPool p = InterestIndexProjector.project(
+                pool("1000.0", "900.0", "1.25"), LAST_UPDATE.plusSeconds(SECONDS_PER_YEAR / 2));
+        assertDecimal("1.375", p.accumulatedIndex());
+        assertDecimal("990.0", p.totalBorrows());
+    }
+
+    @Test
+    void roundsEachStepLikeDamlDecimal() {
+        // 0.07 * 1 / 31536000 = 0.00000000221968...; AccrueInterest keeps 10 decimals -> 0.0000000022
+        InterestIndexProjector.ProjectedPool p = InterestIndexProjector.project(
+                pool("1000.0", "500.0", "1.0"), LAST_UPDATE.plusSeconds(1));
+        assertDecimal("1.0000000022", p.accumulatedIndex());
+        assertDecimal("500.0000011", p.totalBorrows());
+        assertEquals(10, p.accumulatedIndex().scale());
+    }
+
+    @Test
+    void elapsedTimeIsTruncatedToMicroseconds() {
+        InterestIndexProjector.PoolState state = pool("1000.0", "500.0", "1.0");
+        Instant at = LAST_UPDATE.plusSeconds(3_600);
+        assertEquals(InterestIndexProjector.project(state, at).accumulatedIndex(),
+                InterestIndexProjector.project(state, at.plus(Duration.ofNanos(999))).accumulatedIndex());
+    }
+
+    @Test
+    void projectionBeforeLastUpdateDoesNotAccrue() {
+        InterestIndexProjector.ProjectedPool p = InterestIndexProjector.project(
+                pool("1000.0", "500.0", "1.1"), LAST_UPDATE.minusSeconds(60));
+        assertDecimal("1.1", p.accumulatedIndex());
+        assertDecimal("500.0", p.totalBorrows());
+    }
+
+    @Test
+    void emptyPoolHasZeroUtilization() {
+        InterestIndexProjector.ProjectedPool p = InterestIndexProjector.project(
+                pool("0.0", "0.0", "1.0"), LAST_UPDATE.plusSeconds(SECONDS_PER_YEAR));
+        assertDecimal("1.02", p.accumulatedIndex());
+        assertEquals(0.0, p.utilization());
+        assertEquals(0.0, p.supplyApy());
+    }
+}
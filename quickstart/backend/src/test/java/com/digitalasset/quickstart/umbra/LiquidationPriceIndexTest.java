@@ -0,0 +1,127 @@
+package com.digitalasset.quickstart.umbra;
+
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.*;
+
+import static com.digitalasset.quickstart.umbra.UmbraConfig.BORROW_POSITION_TEMPLATE;
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.mock;
+
+class LiquidationPriceIndexTest {
+
+    private static final double[] COLLATERAL_PRICES = {0.04, 0.08, 0.12, 0.16, 0.2};
+    private static final double[] ACC_INDEXES = {1.0, 1.05, 1.3};
+
+    private static Map<String, Object> position(String borrow, String collateral, String entryIndex, String threshold) {
+        Map<String, Object> payload = new HashMap<>();
+        payload.put("borrowAsset", "USDC");
+        payload.put("collateralAsset", "CC");
+        payload.put("borrowAmount", borrow);
+        payload.put("collateralAmount", collateral);
+        payload.put("entryIndex", entryIndex);
+        payload.put("liquidationThreshold", threshold);
+        return payload;
+    }
+
+    private static BigDecimal decimal(BigDecimal value) {
+        return value.setScale(10, RoundingMode.HALF_EVEN);
+    }
+
+    /**
+     * Health factor as the Liquidate choice computes it, with Daml Decimal (scale 10, banker's rounding).
+     */
+    private static BigDecimal damlHealthFactor(Map<String, Object> p, double accIndex, double borrowPrice, double collateralPrice) {
+        BigDecimal growth = new BigDecimal(String.valueOf(accIndex)).divide(new BigDecimal((String) p.get("entryIndex")), 10, RoundingMode.HALF_EVEN);
+        BigDecimal currentDebt = decimal(new BigDecimal((String) p.get("borrowAmount")).multiply(growth));
+        BigDecimal debtValue = decimal(currentDebt.multiply(new BigDecimal(String.valueOf(borrowPrice))));
+        BigDecimal collateralValue = decimal(new BigDecimal((String) p.get("collateralAmount")).multiply(new BigDecimal(String.valueOf(collateralPrice))));
+        BigDecimal liquidationValue = decimal(collateralValue.multiply(new BigDecimal((String) p.get("liquidationThreshold"))));
+        return liquidationValue.divide(debtValue, 10, RoundingMode.HALF_EVEN);
+    }
+
+    @Test
+    void liquidatablePrefixMatchesLiquidateChoice() {
+        LiquidationPriceIndex index = new LiquidationPriceIndex(mock(UmbraContractProjection.class));
+        Random random = new Random(42);
+        Map<String, Map<String, Object>> payloads = new HashMap<>();
+        for (int i = 0; i < 500; i++) {
+            Map<String, Object> payload = position(
+                    BigDecimal.valueOf(10 + random.nextInt(10_000_000), 4).toPlainString(),
+                    BigDecimal.valueOf(1_000 + random.nextInt(100_000_000), 3).toPlainString(),
+                    BigDecimal.valueOf(1_000_000 + random.nextInt(200_000), 6).toPlainString(),
+                    random.nextBoolean() ? "0.65" : "0.8");
+            payloads.put("cid-" + i, payload);
+            index.onCreated(BORROW_POSITION_TEMPLATE, "cid-" + i, payload);
+        }
+
+        int checked = 0, liquidatable = 0;
+        for (double accIndex : ACC_INDEXES) {
+            for (double collateralPrice : COLLATERAL_PRICES) {
+                List<LiquidationPriceIndex.Position> found = index.liquidatable("USDC", "CC", accIndex, 1.0, collateralPrice);
+                Set<String> foundIds = new HashSet<>();
+                found.forEach(p -> foundIds.add(p.contractId()));
+                liquidatable += found.size();
+                for (var e : payloads.entrySet()) {
+                    BigDecimal hf = damlHealthFactor(e.getValue(), accIndex, 1.0, collateralPrice);
+                    // Decimal rounding can only disagree with the double comparison right at the boundary
+                    if (hf.subtract(BigDecimal.ONE).abs().compareTo(new BigDecimal("0.000001")) < 0) continue;
+                    assertEquals(hf.compareTo(BigDecimal.ONE) < 0, foundIds.contains(e.getKey()),
+                            () -> e.getKey() + " hf=" + hf + " index=" + accIndex + " price=" + collateralPrice);
+                    checked++;
+                }
+                for (int i = 1; i < found.size(); i++) {
+                    assertTrue(found.get(i - 1).k() >= found.get(i).k(), "most at risk first");
+                }
+            }
+        }
+        assertTrue(liquidatable > 0 && liquidatable < checked, "scenarios cover both sides of HF = 1");
+    }
+
+    @Test
+    void keyCrossesExactlyWhereHealthFactorDropsBelowOne() {
+        // HF = 1000 * 0.16 * 0.65 / (100 * 1.0 * 1.0) = 1.04; at index 1.04 * 1.01 it is just under 1
+        LiquidationPriceIndex.Position p = LiquidationPriceIndex.parse("cid", position("100", "1000", "1.0", "0.65"));
+        assertEquals(100.0 / (1000 * 0.65), p.k(), 1e-12);
+        LiquidationPriceIndex index = new LiquidationPriceIndex(mock(UmbraContractProjection.class));
+        index.onCreated(BORROW_POSITION_TEMPLATE, "cid", position("100", "1000", "1.0", "0.65"));
+
+        assertTrue(p.healthFactor(1.0, 1.0, 0.16) >= 1.0);
+        assertTrue(index.liquidatable("USDC", "CC", 1.0, 1.0, 0.16).isEmpty());
+        assertTrue(p.healthFactor(1.0504, 1.0, 0.16) < 1.0);
+        assertEquals(List.of(p), index.liquidatable("USDC", "CC", 1.0504, 1.0, 0.16));
+        assertEquals(List.of(p), index.columns("USDC", "CC").liquidatable(1.0504, 1.0, 0.16));
+
+        index.onArchived(BORROW_POSITION_TEMPLATE, "cid");
+        assertTrue(index.liquidatable("USDC", "CC", 1.0504, 1.0, 0.16).isEmpty());
+    }
+
+    @Test
+    void positionWithoutDebtIsNeverLiquidatable() {
+        LiquidationPriceIndex index = new LiquidationPriceIndex(mock(UmbraContractProjection.class));
+        index.onCreated(BORROW_POSITION_TEMPLATE, "cid", position("0", "1000", "1.0", "0.65"));
+        assertTrue(index.liquidatable("USDC", "CC", 10.0, 1.0, 0.0001).isEmpty());
+    }
+
+    @Test
+    void columnarRevaluationAgreesWithIndex() {
+        LiquidationPriceIndex index = new LiquidationPriceIndex(mock(UmbraContractProjection.class));
+        Random random = new Random(7);
+        for (int i = 0; i < 200; i++) {
+            index.onCreated(BORROW_POSITION_TEMPLATE, "cid-" + i, position(
+                    String.valueOf(1 + random.nextInt(1_000)), String.valueOf(100 + random.nextInt(20_000)), "1.0", "0.65"));
+        }
+        List<LiquidationPriceIndex.Position> fromIndex = index.liquidatable("USDC", "CC", 1.1, 1.0, 0.1);
+        List<LiquidationPriceIndex.Position> fromColumns = index.columns("USDC", "CC").liquidatable(1.1, 1.0, 0.1);
+        assertEquals(new HashSet<>(fromIndex), new HashSet<>(fromColumns));
+    }
+
+    @Test
+    void sortByKeyIsStable() {
+        double[] key = {3.0, 1.0, 2.0, 1.0, 0.5};
+        assertArrayEquals(new int[]{4, 1, 3, 2, 0}, BorrowPositionColumns.sortByKey(new int[]{0, 1, 2, 3, 4}, key));
+        assertArrayEquals(new int[0], BorrowPositionColumns.sortByKey(new int[0], key));
+    }
+}
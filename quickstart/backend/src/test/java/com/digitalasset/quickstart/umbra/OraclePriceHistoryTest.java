@@ -0,0 +1,74 @@
+package com.digitalasset.quickstart.umbra;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Instant;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class OraclePriceHistoryTest {
+
+    private static final long T = Instant.parse("2026-01-01T00:00:00Z").toEpochMilli();
+
+    private static void record(OraclePriceHistory history, long at, double price) {
+        history.record(new OraclePriceCache.Quote("CC", price, "cid-" + at, Instant.ofEpochMilli(at).toString()));
+    }
+
+    @Test
+    void twapCoversOnlyThePartOfTheWindowWithData() {
+        OraclePriceHistory history = new OraclePriceHistory(16);
+        record(history, T + 30_000, 100.0);
+
+        OraclePriceHistory.WindowStats stats = history.stats("CC", T, T + 60_000).orElseThrow();
+        assertEquals(100.0, stats.twap(), 1e-9);
+        assertEquals(1, stats.samples());
+    }
+
+    @Test
+    void priceInEffectAtWindowStartIsTimeWeighted() {
+        OraclePriceHistory history = new OraclePriceHistory(16);
+        record(history, T - 10_000, 100.0);
+        record(history, T + 30_000, 200.0);
+
+        OraclePriceHistory.WindowStats stats = history.stats("CC", T, T + 60_000).orElseThrow();
+        assertEquals(150.0, stats.twap(), 1e-9);
+        assertEquals(100.0, stats.min());
+        assertEquals(200.0, stats.max());
+        assertEquals(200.0, stats.last());
+        assertEquals(1, stats.samples());
+    }
+
+    @Test
+    void volatilityIsAnnualizedOverTheCoveredDuration() {
+        OraclePriceHistory history = new OraclePriceHistory(16);
+        record(history, T + 30_000, 100.0);
+        record(history, T + 45_000, 110.0);
+
+        OraclePriceHistory.WindowStats stats = history.stats("CC", T, T + 60_000).orElseThrow();
+        double r = Math.log(110.0 / 100.0);
+        assertEquals(Math.sqrt(r * r / 30.0 * 31_536_000.0), stats.realizedVolatility(), 1e-9);
+        assertEquals((100.0 * 15 + 110.0 * 15) / 30.0, stats.twap(), 1e-9);
+    }
+
+    @Test
+    void windowWithoutDataIsEmpty() {
+        OraclePriceHistory history = new OraclePriceHistory(16);
+        record(history, T + 120_000, 100.0);
+
+        assertTrue(history.stats("CC", T, T + 60_000).isEmpty());
+        assertTrue(history.stats("USDC", T, T + 60_000).isEmpty());
+    }
+
+    @Test
+    void ringKeepsNewestSamplesAndIgnoresReplays() {
+        OraclePriceHistory history = new OraclePriceHistory(2);
+        record(history, T, 1.0);
+        record(history, T + 1_000, 2.0);
+        record(history, T + 2_000, 3.0);
+        record(history, T + 1_000, 9.0);
+
+        assertEquals(2, history.samples("CC", T, T + 10_000).size());
+        assertEquals(2.0, history.samples("CC", T, T + 10_000).get(0)[1]);
+        assertEquals(3.0, history.samples("CC", T, T + 10_000).get(1)[1]);
+    }
+}
@@ -0,0 +1,125 @@
+package com.digitalasset.quickstart.umbra;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SingleFlightTest {
+
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+
+    @AfterEach
+    void shutdown() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Start a load that blocks until {@code release} opens, and wait until its loader is running.
+     */
+    private <V> Future<V> blockedLoad(SingleFlight<String> flights, CountDownLatch release, Callable<V> result,
+                                      AtomicInteger loads) throws InterruptedException {
+        CountDownLatch started = new CountDownLatch(1);
+        Future<V> leader = executor.submit(() -> flights.get("k", () -> {
+            loads.incrementAndGet();
+            started.countDown();
+            try {
+                release.await();
+                return result.call();
+            } catch (RuntimeException | Error e) {
+                throw e;
+            } catch (Exception e) {
+                throw new IllegalStateException(e);
+            }
+        }));
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        return leader;
+    }
+
+    private Future<Object> waiter(SingleFlight<String> flights, AtomicInteger loads) throws InterruptedException {
+        CompletableFuture<Thread> thread = new CompletableFuture<>();
+        Future<Object> waiter = executor.submit(() -> {
+            thread.complete(Thread.currentThread());
+            return flights.get("k", () -> {
+                loads.incrementAndGet();
+                return "own";
+            });
+        });
+        Thread t = thread.join();
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (t.getState() != Thread.State.WAITING && System.nanoTime() < deadline) Thread.sleep(1);
+        return waiter;
+    }
+
+    private static Throwable failure(Future<?> future) {
+        return assertThrows(ExecutionException.class, () -> future.get(5, TimeUnit.SECONDS)).getCause();
+    }
+
+    @Test
+    void concurrentCallersShareOneLoad() throws Exception {
+        SingleFlight<String> flights = new SingleFlight<>(0);
+        AtomicInteger loads = new AtomicInteger();
+        CountDownLatch release = new CountDownLatch(1);
+        Future<String> leader = blockedLoad(flights, release, () -> "value", loads);
+        Future<Object> waiter = waiter(flights, loads);
+        release.countDown();
+
+        assertEquals("value", leader.get(5, TimeUnit.SECONDS));
+        assertEquals("value", waiter.get(5, TimeUnit.SECONDS));
+        assertEquals(1, loads.get());
+        // Without a TTL the next call loads again
+        assertEquals("again", flights.get("k", () -> "again"));
+    }
+
+    @Test
+    void waitersSeeTheLoadersRuntimeException() throws Exception {
+        SingleFlight<String> flights = new SingleFlight<>(60_000);
+        AtomicInteger loads = new AtomicInteger();
+        CountDownLatch release = new CountDownLatch(1);
+        IllegalStateException boom = new IllegalStateException("boom");
+        Future<String> leader = blockedLoad(flights, release, () -> { throw boom; }, loads);
+        Future<Object> waiter = waiter(flights, loads);
+        release.countDown();
+
+        assertSame(boom, failure(leader));
+        assertSame(boom, failure(waiter));
+        assertEquals(1, loads.get());
+        // Failures are never cached, even with a TTL
+        assertEquals("recovered", flights.get("k", () -> "recovered"));
+    }
+
+    @Test
+    void waitersSeeTheLoadersError() throws Exception {
+        SingleFlight<String> flights = new SingleFlight<>(0);
+        AtomicInteger loads = new AtomicInteger();
+        CountDownLatch release = new CountDownLatch(1);
+        Error boom = new Error("boom");
+        Future<String> leader = blockedLoad(flights, release, () -> { throw boom; }, loads);
+        Future<Object> waiter = waiter(flights, loads);
+        release.countDown();
+
+        assertSame(boom, failure(leader));
+        assertSame(boom, failure(waiter));
+        assertEquals("next", flights.get("k", () -> "next"));
+    }
+
+    @Test
+    void resultIsReusedUntilTtlExpires() throws Exception {
+        SingleFlight<String> flights = new SingleFlight<>(100);
+        AtomicInteger loads = new AtomicInteger();
+        assertEquals(1, (int) flights.get("k", loads::incrementAndGet));
+        assertEquals(1, (int) flights.get("k", loads::incrementAndGet));
+        assertEquals(1, (int) flights.get("other", () -> 1));
+
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        int value;
+        do {
+            Thread.sleep(20);
+            value = flights.get("k", loads::incrementAndGet);
+        } while (value == 1 && System.nanoTime() < deadline);
+        assertEquals(2, value);
+    }
+}
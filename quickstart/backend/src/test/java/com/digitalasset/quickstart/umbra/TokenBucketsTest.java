@@ -0,0 +1,62 @@
+package com.digitalasset.quickstart.umbra;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TokenBucketsTest {
+
+    // 20/s -> one token every 50ms
+    private static final long INTERVAL_NANOS = TimeUnit.MILLISECONDS.toNanos(50);
+
+    @Test
+    void admitsBurstThenReportsWait() {
+        TokenBuckets buckets = new TokenBuckets(20, 3);
+        for (int i = 0; i < 3; i++) assertEquals(0, buckets.tryAcquire("alice"));
+
+        long wait = buckets.tryAcquire("alice");
+        assertTrue(wait > 0 && wait <= INTERVAL_NANOS, "wait " + wait);
+        // A rejected request does not consume a token
+        assertTrue(buckets.tryAcquire("alice") <= wait);
+    }
+
+    @Test
+    void refillsAtConfiguredRate() throws InterruptedException {
+        TokenBuckets buckets = new TokenBuckets(20, 2);
+        assertEquals(0, buckets.tryAcquire("alice"));
+        assertEquals(0, buckets.tryAcquire("alice"));
+        long wait = buckets.tryAcquire("alice");
+        assertTrue(wait > 0);
+
+        TimeUnit.NANOSECONDS.sleep(wait + TimeUnit.MILLISECONDS.toNanos(5));
+        assertEquals(0, buckets.tryAcquire("alice"));
+        assertTrue(buckets.tryAcquire("alice") > 0);
+    }
+
+    @Test
+    void keysHaveIndependentBuckets() {
+        TokenBuckets buckets = new TokenBuckets(20, 1);
+        assertEquals(0, buckets.tryAcquire("alice"));
+        assertTrue(buckets.tryAcquire("alice") > 0);
+        assertEquals(0, buckets.tryAcquire("bob"));
+        assertEquals(2, buckets.size());
+    }
+
+    @Test
+    void evictsOnlyFullBuckets() throws InterruptedException {
+        TokenBuckets buckets = new TokenBuckets(20, 2);
+        buckets.tryAcquire("alice");
+        buckets.tryAcquire("alice");
+        buckets.evictIdle();
+        assertEquals(1, buckets.size());
+
+        TimeUnit.NANOSECONDS.sleep(2 * INTERVAL_NANOS + TimeUnit.MILLISECONDS.toNanos(10));
+        buckets.evictIdle();
+        assertEquals(0, buckets.size());
+        // A recreated bucket starts full
+        assertEquals(0, buckets.tryAcquire("alice"));
+        assertEquals(0, buckets.tryAcquire("alice"));
+    }
+}
@@ -0,0 +1,84 @@
+package com.digitalasset.quickstart.umbra;
+
+import io.grpc.Status;
+import io.grpc.StatusRuntimeException;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CompletionException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class UmbraLedgerClientTest {
+
+    private static StatusRuntimeException error(Status.Code code, String description) {
+        return Status.fromCode(code).withDescription(description).asRuntimeException();
+    }
+
+    @Test
+    void commandIdIsDeterministicPerIntentAndKeys() {
+        String id = UmbraLedgerClient.commandId("fill", "buy-1", "sell-2");
+        assertEquals(id, UmbraLedgerClient.commandId("fill", "buy-1", "sell-2"));
+        assertTrue(id.startsWith("umbra-fill-"));
+        assertNotEquals(id, UmbraLedgerClient.commandId("fill", "sell-2", "buy-1"));
+        assertNotEquals(id, UmbraLedgerClient.commandId("liquidate", "buy-1", "sell-2"));
+    }
+
+    @Test
+    void batchCommandIdChangesWithAnyContract() {
+        // Batched oracle updates are keyed by every input contract id
+        String batch = UmbraLedgerClient.commandId("update-price", "cc-1", "usdc-1");
+        assertNotEquals(batch, UmbraLedgerClient.commandId("update-price", "cc-2", "usdc-1"));
+        assertNotEquals(batch, UmbraLedgerClient.commandId("update-price", "cc-1"));
+    }
+
+    @Test
+    void randomCommandIdsAreUnique() {
+        assertNotEquals(UmbraLedgerClient.randomCommandId(), UmbraLedgerClient.randomCommandId());
+    }
+
+    @Test
+    void classifiesDuplicateAndContentionErrors() {
+        assertTrue(UmbraLedgerClient.isDuplicateCommand(new CompletionException(error(Status.Code.ALREADY_EXISTS, "DUPLICATE_COMMAND"))));
+        assertFalse(UmbraLedgerClient.isDuplicateCommand(error(Status.Code.ABORTED, "CONTRACT_NOT_FOUND")));
+
+        StatusRuntimeException notFound = error(Status.Code.NOT_FOUND, "CONTRACT_NOT_FOUND(11,abc): Contract could not be found with id 00pos");
+        assertTrue(UmbraLedgerClient.isContentionError(new CompletionException(notFound)));
+        assertTrue(UmbraLedgerClient.isContentionOn(notFound, "00pos"));
+        assertFalse(UmbraLedgerClient.isContentionOn(notFound, "00oracle"));
+        assertFalse(UmbraLedgerClient.isContentionError(error(Status.Code.INVALID_ARGUMENT, "DAML_INTERPRETATION_ERROR")));
+    }
+
+    @Test
+    void retriesTransientFailures() {
+        assertTrue(UmbraLedgerClient.isRetryable(error(Status.Code.UNAVAILABLE, "connection reset"), false));
+        assertTrue(UmbraLedgerClient.isRetryable(error(Status.Code.DEADLINE_EXCEEDED, null), false));
+        assertTrue(UmbraLedgerClient.isRetryable(error(Status.Code.ABORTED, "SEQUENCER_BACKPRESSURE"), false));
+        assertFalse(UmbraLedgerClient.isRetryable(error(Status.Code.INVALID_ARGUMENT, "bad command"), true));
+        assertFalse(UmbraLedgerClient.isRetryable(new IllegalStateException("boom"), true));
+    }
+
+    @Test
+    void retriesContentionOnlyWhenResolvableOrLocked() {
+        StatusRuntimeException consumed = error(Status.Code.NOT_FOUND, "CONTRACT_NOT_FOUND(11,abc)");
+        assertTrue(UmbraLedgerClient.isRetryable(consumed, true));
+        assertFalse(UmbraLedgerClient.isRetryable(consumed, false));
+
+        StatusRuntimeException locked = error(Status.Code.ABORTED, "LOCAL_VERDICT_LOCKED_CONTRACTS(2,abc)");
+        assertTrue(UmbraLedgerClient.isRetryable(locked, false));
+    }
+
+    @Test
+    void backoffIsBoundedByExponentialCeiling() {
+        UmbraConfig.Ledger cfg = new UmbraConfig.Ledger();
+        cfg.setRetryBaseDelayMs(100);
+        cfg.setRetryMaxDelayMs(1_000);
+        for (int i = 0; i < 1_000; i++) {
+            long first = UmbraLedgerClient.backoffMillis(cfg, 1);
+            long third = UmbraLedgerClient.backoffMillis(cfg, 3);
+            long late = UmbraLedgerClient.backoffMillis(cfg, 40);
+            assertTrue(first >= 0 && first <= 100, "first " + first);
+            assertTrue(third >= 0 && third <= 400, "third " + third);
+            assertTrue(late >= 0 && late <= 1_000, "late " + late);
+        }
+    }
+}